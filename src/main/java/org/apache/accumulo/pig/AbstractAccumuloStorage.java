@@ -17,17 +17,32 @@
 package org.apache.accumulo.pig;
 
 import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+import java.util.TreeSet;
 
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.ZooKeeperInstance;
+import org.apache.accumulo.core.client.impl.IsolationException;
 import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
+import org.apache.accumulo.core.client.mapreduce.InputFormatBase.RangeInputSplit;
 import org.apache.accumulo.core.client.mapreduce.AccumuloOutputFormat;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.user.TimestampFilter;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.util.Pair;
 import org.apache.commons.logging.Log;
@@ -35,17 +50,25 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparable;
 import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.OutputFormat;
 import org.apache.hadoop.mapreduce.RecordReader;
 import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.pig.CollectableLoadFunc;
+import org.apache.pig.IndexableLoadFunc;
 import org.apache.pig.LoadFunc;
+import org.apache.pig.OrderedLoadFunc;
 import org.apache.pig.ResourceSchema;
 import org.apache.pig.StoreFuncInterface;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.Tuple;
+import org.apache.pig.tools.pigstats.PigStatusReporter;
 
 /**
  * A LoadStoreFunc for retrieving data from and storing data to Accumulo
@@ -55,13 +78,50 @@ import org.apache.pig.data.Tuple;
  * 
  * Tuples can be written in 2 forms: (key, colfam, colqual, colvis, value) OR (key, colfam, colqual, value)
  * 
+ * When a load location specifies checkpoint=path, only cells with a timestamp newer than the one committed in that file are read. The upper bound used by
+ * the job is chosen when it is planned and kept in path.pending. Pig 0.9 never tells a LoadFunc that the job reading it succeeded, so the upper bound has to
+ * be committed explicitly afterwards, see Checkpoint. Until then every run reads the same window again. Tasks never write checkpoint files, so a checkpointed
+ * location can not be the right side of a merge join, whose location Pig only sets inside the tasks.
+ * 
+ * When a store location specifies idempotent=true, every cell written without a timestamp gets the same timestamp, chosen when the job is planned, and
+ * speculative execution is turned off. A retried task then rewrites the same cells instead of adding versions, and a failed job can be rerun with
+ * write_timestamp set to that timestamp to overwrite exactly what it had written.
+ * 
+ * When a location specifies compression=deflate, values longer than compression_threshold_bytes (1024 by default) are compressed before they are written,
+ * and compressed values are decompressed as they are loaded, unless the script does not use them (see AccumuloStorage). Loading with compression=deflate
+ * is safe on tables that also hold uncompressed values, unless those values happen to start with the compression header.
+ * 
+ * A load location can set parallelism=N to cut every tablet's rows into N ranges, or splits_file=path to also cut at the rows listed in that file, one per
+ * line. Each range is read by its own map task. The cuts are evenly spaced in key space between the rows around them, and a load without a start or end row
+ * first looks up the first or last row of the table to bound them, so they only even out the work if rows are spread evenly over that space.
+ * 
+ * When a scan gives up, e.g. because it timed out trying to reach a tablet server, it is resumed right after the last key that was returned instead of
+ * failing the task. Each failure is retried scan_retries (3 by default) times with an exponential backoff, and every resumed scan is counted in the
+ * "Scans resumed" counter. Failures that would happen again, such as a security error or a deleted table, are not retried.
+ * 
+ * Tables are sorted by row and a row never spans two splits, so the first field of every loaded tuple can be used for merge joins and collected groups, as
+ * long as no row contains a byte of 0x80 or above. Accumulo sorts rows as unsigned bytes, but Pig 0.9 compares bytearrays as signed bytes, so such rows reach
+ * Pig out of the order it expects. ASCII rows, e.g. hex encoded or decimal ids, are safe.
+ * 
  */
-public abstract class AbstractAccumuloStorage extends LoadFunc implements StoreFuncInterface {
+public abstract class AbstractAccumuloStorage extends LoadFunc implements StoreFuncInterface, OrderedLoadFunc, CollectableLoadFunc, IndexableLoadFunc {
   private static final Log LOG = LogFactory.getLog(AbstractAccumuloStorage.class);
   
+  static final String CHECKPOINT_PREFIX = AbstractAccumuloStorage.class.getSimpleName() + ".checkpoint.";
+  static final String CHECKPOINT_START_PREFIX = AbstractAccumuloStorage.class.getSimpleName() + ".checkpoint_start.";
+  static final int CHECKPOINT_ITERATOR_PRIORITY = 5;
+  static final String WRITE_TIMESTAMP_PREFIX = AbstractAccumuloStorage.class.getSimpleName() + ".write_timestamp.";
+  static final String SCANS_RESUMED_COUNTER = "Scans resumed";
+  
   private Configuration conf;
   private RecordReader<Key,Value> reader;
   private RecordWriter<Text,Mutation> writer;
+  private Scanner scanner;
+  private Iterator<Entry<Key,Value>> scannerIterator;
+  private Range scanRange;
+  private Key lastKey;
+  private Key resumedAfter;
+  private boolean resumeScan = false;
   
   String inst;
   String zookeepers;
@@ -71,48 +131,282 @@ public abstract class AbstractAccumuloStorage extends LoadFunc implements StoreF
   Text tableName;
   String auths;
   Authorizations authorizations;
-  List<Pair<Text,Text>> columnFamilyColumnQualifierPairs = new LinkedList<Pair<Text,Text>>();
+  List<Pair<Text,Text>> columnFamilyColumnQualifierPairs;
+  String parsedLocation = null;
   
-  String start = null;
-  String end = null;
+  String start;
+  String end;
+  String checkpoint;
+  int parallelism;
+  int scanRetries;
+  long scanRetryBackoffMs = 1000;
+  String splitsFile;
+  ValueCodec codec;
+  boolean compression;
+  int compressionThresholdBytes;
   
-  int maxWriteThreads = 10;
-  long maxMutationBufferSize = 10 * 1000 * 1000;
-  int maxLatency = 10 * 1000;
+  int maxWriteThreads;
+  long maxMutationBufferSize;
+  int maxLatency;
+  boolean idempotent;
+  Long writeTimestamp;
+  boolean operations;
   
-  public AbstractAccumuloStorage() {}
+  public AbstractAccumuloStorage() {
+    resetLocationOptions();
+  }
+  
+  /**
+   * Sets every option that can be given in a location back to its default, so that nothing from a previously parsed location is kept.
+   */
+  private void resetLocationOptions() {
+    inst = null;
+    zookeepers = null;
+    user = null;
+    password = null;
+    auths = null;
+    columnFamilyColumnQualifierPairs = new LinkedList<Pair<Text,Text>>();
+    
+    start = null;
+    end = null;
+    checkpoint = null;
+    parallelism = 0;
+    scanRetries = 3;
+    splitsFile = null;
+    codec = null;
+    compression = false;
+    compressionThresholdBytes = 1024;
+    
+    maxWriteThreads = 10;
+    maxMutationBufferSize = 10 * 1000 * 1000;
+    maxLatency = 10 * 1000;
+    idempotent = false;
+    writeTimestamp = null;
+    operations = false;
+  }
   
   @Override
   public Tuple getNext() throws IOException {
-    try {
-      // load the next pair
-      if (!reader.nextKeyValue())
-        return null;
+    for (int attempt = 1;; attempt++) {
+      Entry<Key,Value> e;
+      try {
+        e = nextEntry();
+      } catch (InterruptedException ie) {
+        throw new IOException(ie.getMessage());
+      } catch (IOException ioe) {
+        retryScan(ioe, attempt);
+        continue;
+      } catch (RuntimeException re) {
+        // scanners wrap whatever stopped them in a RuntimeException
+        if (!isResumable(re))
+          throw re;
+        retryScan(re, attempt);
+        continue;
+      }
       
-      Key key = (Key) reader.getCurrentKey();
-      Value value = (Value) reader.getCurrentValue();
-      assert key != null && value != null;
-      return getTuple(key, value);
+      if (e == null)
+        return null;
+      lastKey = e.getKey();
+      return getTuple(e.getKey(), e.getValue());
+    }
+  }
+  
+  private Entry<Key,Value> nextEntry() throws IOException, InterruptedException {
+    if (resumeScan) {
+      resumeScan();
+      resumeScan = false;
+    }
+    
+    if (scannerIterator != null) {
+      // reading from a scanner positioned by seekNear or resumed after a failure
+      while (scannerIterator.hasNext()) {
+        Entry<Key,Value> e = scannerIterator.next();
+        // some scanners, e.g. the mock one, treat the exclusive start key of a resumed scan as inclusive
+        if (resumedAfter != null && e.getKey().compareTo(resumedAfter) <= 0)
+          continue;
+        resumedAfter = null;
+        return e;
+      }
+      return null;
+    }
+    
+    // load the next pair
+    if (!reader.nextKeyValue())
+      return null;
+    
+    Key key = (Key) reader.getCurrentKey();
+    Value value = (Value) reader.getCurrentValue();
+    assert key != null && value != null;
+    return new SimpleImmutableEntry<Key,Value>(key, value);
+  }
+  
+  /**
+   * The scanner already finds a tablet again when it moves or its server dies, so only the failures it gives up on are worth resuming: an I/O failure, such as
+   * a scan that timed out trying to reach a tablet server, or an isolated scan whose row changed while it was read. Security errors, deleted or offline tables
+   * and errors raised by iterators would only fail again.
+   */
+  static boolean isResumable(Throwable t) {
+    for (; t != null; t = t.getCause()) {
+      if (t instanceof IOException || t instanceof IsolationException)
+        return true;
+    }
+    return false;
+  }
+  
+  private void retryScan(Exception cause, int attempt) throws IOException {
+    if (scanRange == null || attempt > scanRetries) {
+      if (cause instanceof IOException)
+        throw (IOException) cause;
+      throw (RuntimeException) cause;
+    }
+    
+    LOG.warn("scan of " + table + " failed after " + lastKey + ", resuming (attempt " + attempt + " of " + scanRetries + ")", cause);
+    try {
+      Thread.sleep(scanRetryBackoffMs << (attempt - 1));
     } catch (InterruptedException e) {
       throw new IOException(e.getMessage());
     }
+    resumeScan = true;
+  }
+  
+  /**
+   * Replaces the current reader or scanner with a new scanner that picks up right after the last key returned
+   */
+  private void resumeScan() throws IOException {
+    Range rest = lastKey == null ? scanRange : scanRange.clip(new Range(lastKey, false, null, false), true);
+    if (rest == null) {
+      scannerIterator = Collections.<Entry<Key,Value>> emptyList().iterator();
+    } else {
+      // always use a new scanner, the old one may still be bound to the server that failed
+      initialize(conf);
+      scannerIterator = scan(rest);
+      resumedAfter = lastKey;
+    }
+    
+    Counter resumed = PigStatusReporter.getInstance().getCounter(AbstractAccumuloStorage.class.getSimpleName(), SCANS_RESUMED_COUNTER);
+    if (resumed != null)
+      resumed.increment(1);
   }
   
   protected abstract Tuple getTuple(Key key, Value value) throws IOException;
   
+  /**
+   * Converts a cell value to a tuple field with the configured codec.
+   */
+  protected Object decodeValue(Value value) throws IOException {
+    byte[] bytes = value.get();
+    if (compression && ValueCompression.isCompressed(bytes))
+      bytes = ValueCompression.decompress(bytes);
+    if (codec != null)
+      return codec.decode(bytes);
+    return new DataByteArray(bytes);
+  }
+  
+  protected Value encodeValue(Object o) throws IOException {
+    byte[] bytes = codec != null ? codec.encode(o) : Utils.objToBytes(o);
+    if (compression && bytes.length > compressionThresholdBytes)
+      bytes = ValueCompression.compress(bytes);
+    return new Value(bytes);
+  }
+  
   @Override
   public InputFormat getInputFormat() {
     return new AccumuloInputFormat();
   }
   
   @Override
-  public void prepareToRead(RecordReader reader, PigSplit split) {
+  public void prepareToRead(RecordReader reader, PigSplit split) throws IOException {
     this.reader = reader;
+    if (split != null && split.getWrappedSplit() instanceof RangeInputSplit)
+      scanRange = ((RangeInputSplit) split.getWrappedSplit()).getRange();
+  }
+  
+  @Override
+  public WritableComparable<?> getSplitComparable(InputSplit split) throws IOException {
+    if (split instanceof PigSplit)
+      split = ((PigSplit) split).getWrappedSplit();
+    
+    // splits are ordered by the first row they can contain, as unsigned bytes like Accumulo does (see the class comment)
+    Key startKey = ((RangeInputSplit) split).getRange().getStartKey();
+    return startKey == null ? new Text() : startKey.getRow();
+  }
+  
+  @Override
+  public void ensureAllKeyInstancesInSameSplit() throws IOException {
+    // nothing to do, splits are made along tablet boundaries and tablets never divide a row
+  }
+  
+  @Override
+  public void initialize(Configuration conf) throws IOException {
+    Configuration input = conf;
+    if (!table.equals(InputFormatScanner.getTable(conf))) {
+      // e.g. the right side of a merge join, whose location Pig only sets inside a task of the job reading the left side
+      input = new Configuration(false);
+      for (Entry<String,String> e : conf) {
+        if (!e.getKey().startsWith(AccumuloInputFormat.class.getSimpleName() + "."))
+          input.set(e.getKey(), e.getValue());
+      }
+      configureInput(input);
+    }
+    // set up everything the job set through AccumuloInputFormat, including what subclasses added in configureInputFormat
+    scanner = InputFormatScanner.createScanner(getConnector(), input);
+  }
+  
+  @Override
+  public void seekNear(Tuple keys) throws IOException {
+    Range range = getSeekRange(Utils.objToText(keys.get(0)));
+    if (range == null) {
+      scannerIterator = Collections.<Entry<Key,Value>> emptyList().iterator();
+    } else {
+      scannerIterator = scan(range);
+    }
+    scanRange = range;
+    lastKey = null;
+    resumedAfter = null;
+  }
+  
+  /**
+   * Reads the current split with a scanner instead of the record reader
+   */
+  protected void scanSplit() throws IOException {
+    initialize(conf);
+    scannerIterator = scanRange == null ? Collections.<Entry<Key,Value>> emptyList().iterator() : scan(scanRange);
+  }
+  
+  /**
+   * @return the entries of the range, read with the scanner set up by initialize
+   */
+  protected Iterator<Entry<Key,Value>> scan(Range range) throws IOException {
+    scanner.setRange(range);
+    return scanner.iterator();
+  }
+  
+  protected Scanner getScanner() {
+    return scanner;
+  }
+  
+  /**
+   * @return the part of the rows between start and end that is at or after the given row, or null if there is none
+   */
+  Range getSeekRange(Text row) {
+    return new Range(start, end).clip(new Range(row, true, null, false), true);
+  }
+  
+  @Override
+  public void close() throws IOException {
+    scanner = null;
+    scannerIterator = null;
   }
   
   private void setLocationFromUri(String location) throws IOException {
     // ex:
     // accumulo://table1?instance=myinstance&user=root&password=secret&zookeepers=127.0.0.1:2181&auths=PRIVATE,PUBLIC&columns=col1|cq1,col2|cq2&start=abc&end=z
+    // Pig sets the location many times on the same instance, and the result only depends on the location
+    if (location.equals(parsedLocation))
+      return;
+    parsedLocation = null;
+    resetLocationOptions();
+    
     String columns = "";
     try {
       if (!location.startsWith("accumulo://"))
@@ -137,12 +431,34 @@ public abstract class AbstractAccumuloStorage extends LoadFunc implements StoreF
             start = pair[1];
           else if (pair[0].equals("end"))
             end = pair[1];
+          else if (pair[0].equals("checkpoint"))
+            checkpoint = pair[1];
+          else if (pair[0].equals("parallelism"))
+            parallelism = Integer.parseInt(pair[1]);
+          else if (pair[0].equals("splits_file"))
+            splitsFile = pair[1];
+          else if (pair[0].equals("scan_retries"))
+            scanRetries = Integer.parseInt(pair[1]);
+          else if (pair[0].equals("codec"))
+            codec = ValueCodecs.forName(pair[1]);
+          else if (pair[0].equals("compression")) {
+            if (!pair[1].equals("deflate") && !pair[1].equals("none"))
+              throw new Exception("Unknown compression " + pair[1]);
+            compression = pair[1].equals("deflate");
+          } else if (pair[0].equals("compression_threshold_bytes"))
+            compressionThresholdBytes = Integer.parseInt(pair[1]);
           else if (pair[0].equals("write_buffer_size_bytes"))
             maxMutationBufferSize = Long.parseLong(pair[1]);
           else if (pair[0].equals("write_threads"))
             maxWriteThreads = Integer.parseInt(pair[1]);
           else if (pair[0].equals("write_latency_ms"))
             maxLatency = Integer.parseInt(pair[1]);
+          else if (pair[0].equals("idempotent"))
+            idempotent = Boolean.parseBoolean(pair[1]);
+          else if (pair[0].equals("write_timestamp"))
+            writeTimestamp = Long.parseLong(pair[1]);
+          else if (pair[0].equals("operations"))
+            operations = Boolean.parseBoolean(pair[1]);
         }
       }
       String[] parts = urlParts[0].split("/+");
@@ -166,10 +482,11 @@ public abstract class AbstractAccumuloStorage extends LoadFunc implements StoreF
         }
       }
       
+      parsedLocation = location;
     } catch (Exception e) {
       throw new IOException(
           "Expected 'accumulo://<table>[?instance=<instanceName>&user=<user>&password=<password>&zookeepers=<zookeepers>&auths=<authorizations>&"
-              + "[start=startRow,end=endRow,columns=[cf1|cq1,cf2|cq2,...],write_buffer_size_bytes=10000000,write_threads=10,write_latency_ms=30000]]': "
+              + "[start=startRow,end=endRow,columns=[cf1|cq1,cf2|cq2,...],checkpoint=path,parallelism=10,splits_file=path,scan_retries=3,codec=raw,compression=deflate,compression_threshold_bytes=1024,write_buffer_size_bytes=10000000,write_threads=10,write_latency_ms=30000,idempotent=true,write_timestamp=ts,operations=true]]': "
               + e.getMessage());
     }
   }
@@ -183,16 +500,106 @@ public abstract class AbstractAccumuloStorage extends LoadFunc implements StoreF
     conf = job.getConfiguration();
     setLocationFromUri(location);
     
-    if (!conf.getBoolean(AccumuloInputFormat.class.getSimpleName() + ".configured", false)) {
-      AccumuloInputFormat.setInputInfo(conf, user, password.getBytes(), table, authorizations);
-      AccumuloInputFormat.setZooKeeperInstance(conf, inst, zookeepers);
-      if (columnFamilyColumnQualifierPairs.size() > 0) {
-        LOG.info("columns: " + columnFamilyColumnQualifierPairs);
-        AccumuloInputFormat.fetchColumns(conf, columnFamilyColumnQualifierPairs);
+    // a task only gets here without a configured input if Pig sets the location there for initialize, which sets up its own
+    if (!conf.getBoolean(AccumuloInputFormat.class.getSimpleName() + ".configured", false) && !isTask(conf)) {
+      configureInput(conf);
+      AccumuloInputFormat.setRanges(conf, getRanges(conf));
+    }
+  }
+  
+  /**
+   * Sets up everything about reading the table through AccumuloInputFormat except the ranges
+   */
+  private void configureInput(Configuration conf) throws IOException {
+    AccumuloInputFormat.setInputInfo(conf, user, password.getBytes(), table, authorizations);
+    AccumuloInputFormat.setZooKeeperInstance(conf, inst, zookeepers);
+    if (columnFamilyColumnQualifierPairs.size() > 0) {
+      LOG.info("columns: " + columnFamilyColumnQualifierPairs);
+      AccumuloInputFormat.fetchColumns(conf, columnFamilyColumnQualifierPairs);
+    }
+    
+    if (checkpoint != null) {
+      AccumuloInputFormat.addIterator(conf, getCheckpointIteratorSetting(conf));
+    }
+    configureInputFormat(conf);
+  }
+  
+  private static boolean isTask(Configuration conf) {
+    return conf.get("mapred.task.id") != null;
+  }
+  
+  private IteratorSetting getCheckpointIteratorSetting(Configuration conf) throws IOException {
+    if (conf.get(CHECKPOINT_PREFIX + checkpoint) == null) {
+      // tasks running at the same time would each choose their own window
+      if (isTask(conf))
+        throw new IOException("checkpoint " + checkpoint + " was not planned with the job, so it can not be read where Pig only sets the location in a task,"
+            + " e.g. on the right side of a merge join");
+      // only read the files when the job is planned, so every task and every resumed scan reads the same window
+      Long last = Checkpoint.read(conf, checkpoint);
+      if (last != null)
+        conf.setLong(CHECKPOINT_START_PREFIX + checkpoint, last);
+      conf.setLong(CHECKPOINT_PREFIX + checkpoint, Checkpoint.plan(conf, checkpoint));
+    }
+    String committed = conf.get(CHECKPOINT_START_PREFIX + checkpoint);
+    Long lastCheckpoint = committed == null ? null : Long.parseLong(committed);
+    long nextCheckpoint = conf.getLong(CHECKPOINT_PREFIX + checkpoint, -1);
+    
+    IteratorSetting is = new IteratorSetting(CHECKPOINT_ITERATOR_PRIORITY, "checkpoint", TimestampFilter.class);
+    if (lastCheckpoint == null) {
+      TimestampFilter.setEnd(is, nextCheckpoint, true);
+    } else {
+      TimestampFilter.setRange(is, lastCheckpoint, false, nextCheckpoint, true);
+    }
+    
+    LOG.info("checkpoint " + checkpoint + ": reading timestamps (" + lastCheckpoint + ", " + nextCheckpoint + "]");
+    return is;
+  }
+  
+  /**
+   * @return the ranges of the table to read, by default the rows between start and end
+   */
+  protected Collection<Range> getRanges(Configuration conf) throws IOException {
+    Range range = new Range(start, end);
+    if (parallelism <= 1 && splitsFile == null)
+      return Collections.singleton(range);
+    
+    // cut at the tablet boundaries as well, so no range has to be read from two tablet servers
+    SortedSet<Text> splits = new TreeSet<Text>();
+    try {
+      splits.addAll(getConnector().tableOperations().getSplits(table));
+    } catch (TableNotFoundException e) {
+      throw new IOException(e);
+    }
+    if (splitsFile != null)
+      splits.addAll(RangeSplitter.readSplits(conf, splitsFile));
+    if (parallelism > 1) {
+      // without a start or end the first and last intervals would be cut over every possible row, not just the rows in the table
+      Scanner rowScanner;
+      try {
+        rowScanner = getConnector().createScanner(table, authorizations);
+      } catch (TableNotFoundException e) {
+        throw new IOException(e);
       }
-      
-      AccumuloInputFormat.setRanges(conf, Collections.singleton(new Range(start, end)));
-      configureInputFormat(conf);
+      Text startRow = start != null ? new Text(start) : RangeSplitter.firstRow(rowScanner);
+      Text endRow = end != null ? new Text(end) : RangeSplitter.lastRow(rowScanner);
+      if (startRow != null && endRow != null)
+        splits = RangeSplitter.subdivide(splits, startRow, endRow, parallelism);
+    }
+    
+    // otherwise the input format would merge the ranges again and cut them only at the tablets
+    AccumuloInputFormat.disableAutoAdjustRanges(conf);
+    List<Range> ranges = RangeSplitter.split(range, splits);
+    LOG.info("reading " + table + " as " + ranges.size() + " ranges");
+    return ranges;
+  }
+  
+  protected Connector getConnector() throws IOException {
+    try {
+      return new ZooKeeperInstance(inst, zookeepers).getConnector(user, password.getBytes());
+    } catch (AccumuloException e) {
+      throw new IOException(e);
+    } catch (AccumuloSecurityException e) {
+      throw new IOException(e);
     }
   }
   
@@ -233,11 +640,27 @@ public abstract class AbstractAccumuloStorage extends LoadFunc implements StoreF
       AccumuloOutputFormat.setMaxLatency(conf, maxLatency);
       AccumuloOutputFormat.setMaxMutationBufferSize(conf, maxMutationBufferSize);
       AccumuloOutputFormat.setMaxWriteThreads(conf, maxWriteThreads);
+      if (idempotent) {
+        // a second attempt running at the same time would only double the write load
+        conf.setBoolean("mapred.map.tasks.speculative.execution", false);
+        conf.setBoolean("mapred.reduce.tasks.speculative.execution", false);
+        conf.setLong(WRITE_TIMESTAMP_PREFIX + table, writeTimestamp == null ? System.currentTimeMillis() : writeTimestamp);
+      }
       configureOutputFormat(conf);
     }
+    
+    if (idempotent && writeTimestamp == null) {
+      String timestamp = conf.get(WRITE_TIMESTAMP_PREFIX + table);
+      if (timestamp == null)
+        throw new IOException("idempotent store to " + table + " has no write timestamp planned with the job");
+      writeTimestamp = Long.parseLong(timestamp);
+    }
   }
   
   public OutputFormat getOutputFormat() {
+    // only operations=true writes a mutation per deleted cell, which is worth merging
+    if (operations)
+      return new RowMergingAccumuloOutputFormat();
     return new AccumuloOutputFormat();
   }
   
@@ -249,7 +672,15 @@ public abstract class AbstractAccumuloStorage extends LoadFunc implements StoreF
     this.writer = writer;
   }
   
-  public abstract Collection<Mutation> getMutations(Tuple tuple) throws ExecException, IOException;
+  public Collection<Mutation> getMutations(Tuple tuple) throws ExecException, IOException {
+    return getMutations(tuple, writeTimestamp);
+  }
+  
+  /**
+   * @param timestamp
+   *          the timestamp of cells the tuple does not give one, or null to let the tablet servers assign it
+   */
+  protected abstract Collection<Mutation> getMutations(Tuple tuple, Long timestamp) throws ExecException, IOException;
   
   public void putNext(Tuple tuple) throws ExecException, IOException {
     Collection<Mutation> muts = getMutations(tuple);
@@ -262,7 +693,22 @@ public abstract class AbstractAccumuloStorage extends LoadFunc implements StoreF
     }
   }
   
-  public void cleanupOnFailure(String failure, Job job) {}
+  public void cleanupOnFailure(String failure, Job job) throws IOException {
+    setLocationFromUri(failure);
+    String timestamp = job.getConfiguration().get(WRITE_TIMESTAMP_PREFIX + table);
+    if (timestamp != null) {
+      LOG.warn("Writes to " + table + " may be incomplete. Rerun with write_timestamp=" + timestamp + " to overwrite the cells already written.");
+    }
+  }
 
-  public void cleanupOnSuccess(String location, Job job) {}
+  /**
+   * Pig versions that call this after a successful STORE commit the checkpoints of the loads in the same job. Pig 0.9 never calls it, see Checkpoint.
+   */
+  public void cleanupOnSuccess(String location, Job job) throws IOException {
+    for (Entry<String,String> e : job.getConfiguration()) {
+      if (e.getKey().startsWith(CHECKPOINT_PREFIX)) {
+        Checkpoint.commit(job.getConfiguration(), e.getKey().substring(CHECKPOINT_PREFIX.length()));
+      }
+    }
+  }
 }
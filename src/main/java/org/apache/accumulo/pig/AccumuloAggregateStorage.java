@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.IOException;
+import java.util.Collection;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.pig.GroupAggregatingIterator.Function;
+import org.apache.accumulo.pig.GroupAggregatingIterator.Group;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.pig.backend.executionengine.ExecException;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+
+/**
+ * A LoadFunc that computes COUNT, SUM, MIN or MAX over each row, or each column family of a row, on the tablet servers
+ * 
+ * Grouping by row returns tuples: (key, aggregate). Grouping by column family returns tuples: (key, colfam, aggregate). The key and colfam are DataByteArray,
+ * the aggregate is a long. SUM, MIN and MAX expect values to be decimal strings.
+ * 
+ * Column families are only reduced within a row, so a script grouping by colfam alone still has to combine the per-row results (e.g. SUM the partial counts).
+ * 
+ * The tablet servers need this jar on their classpath to load the aggregating iterator.
+ * 
+ */
+public class AccumuloAggregateStorage extends AbstractAccumuloStorage {
+  
+  // above the table's VersioningIterator (20), so only the versions a plain scan would return are aggregated
+  static final int ITERATOR_PRIORITY = 30;
+  
+  private final Function function;
+  private final Group group;
+  
+  public AccumuloAggregateStorage(String function) {
+    this(function, "row");
+  }
+  
+  public AccumuloAggregateStorage(String function, String group) {
+    this.function = Function.valueOf(function.toUpperCase());
+    if (group.equalsIgnoreCase("row"))
+      this.group = Group.ROW;
+    else if (group.equalsIgnoreCase("cf") || group.equalsIgnoreCase("colfam"))
+      this.group = Group.COLFAM;
+    else
+      throw new IllegalArgumentException("Expected group to be one of 'row' or 'cf': " + group);
+  }
+  
+  @Override
+  protected Tuple getTuple(Key key, Value value) throws IOException {
+    Long aggregate = Long.parseLong(new String(value.get()));
+    
+    Tuple tuple;
+    if (group == Group.ROW) {
+      tuple = TupleFactory.getInstance().newTuple(2);
+      tuple.set(0, new DataByteArray(key.getRow().getBytes()));
+      tuple.set(1, aggregate);
+    } else {
+      tuple = TupleFactory.getInstance().newTuple(3);
+      tuple.set(0, new DataByteArray(key.getRow().getBytes()));
+      tuple.set(1, new DataByteArray(key.getColumnFamily().getBytes()));
+      tuple.set(2, aggregate);
+    }
+    return tuple;
+  }
+  
+  protected void configureInputFormat(Configuration conf) {
+    AccumuloInputFormat.addIterator(conf, getIteratorSetting());
+  }
+  
+  IteratorSetting getIteratorSetting() {
+    IteratorSetting is = new IteratorSetting(ITERATOR_PRIORITY, GroupAggregatingIterator.class);
+    GroupAggregatingIterator.setFunction(is, function);
+    GroupAggregatingIterator.setGroup(is, group);
+    return is;
+  }
+  
+  @Override
+  protected Collection<Mutation> getMutations(Tuple tuple, Long timestamp) throws ExecException, IOException {
+    throw new IOException(AccumuloAggregateStorage.class.getSimpleName() + " can only be used to load data");
+  }
+}
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+
+/**
+ * A LoadFunc that only reads the rows of a table that an index table points to
+ * 
+ * The index table is expected to hold one entry per (term, row) pair, with the term as the row and the row of the data table as the column qualifier. Terms
+ * are given as a comma separated list, a term ending in '*' matches every term with that prefix. The rows matching any of the terms are read and returned in
+ * the same form as AccumuloStorage.
+ * 
+ * The matching rows are looked up once when the job is planned, to make one split per tablet that has any, covering the rows from its first to its last
+ * match. Each task looks the terms up again for its own split and only reads the rows that match, so no row ids have to be shipped with the job.
+ * 
+ * The price is that every task reads all index entries of the terms, keeping only those in its split, so a load reads the index once per tablet with
+ * matches, plus once when it is planned. That is cheap for selective terms, but a term matching many rows in many tablets multiplies its index entries by
+ * the number of tablets. A load without any match runs a single task that reads neither table.
+ * 
+ */
+public class AccumuloIndexLookupStorage extends AccumuloStorage {
+  private static final Log LOG = LogFactory.getLog(AccumuloIndexLookupStorage.class);
+  
+  private final String indexTable;
+  private final String terms;
+  
+  int indexLookupThreads = 10;
+  
+  public AccumuloIndexLookupStorage(String indexTable, String terms) {
+    this.indexTable = indexTable;
+    this.terms = terms;
+  }
+  
+  @Override
+  protected Collection<Range> getRanges(Configuration conf) throws IOException {
+    SortedSet<Text> rows = lookupRows(new Range(start, end));
+    LOG.info("index " + indexTable + " matched " + rows.size() + " rows for terms " + terms);
+    
+    try {
+      return getRowRanges(rows, getConnector().tableOperations().getSplits(table));
+    } catch (TableNotFoundException e) {
+      throw new IOException(e);
+    }
+  }
+  
+  @Override
+  public void prepareToRead(RecordReader reader, PigSplit split) throws IOException {
+    super.prepareToRead(reader, split);
+    // the split also covers the rows between the matches, so read it with the scanner, which skips them
+    scanSplit();
+  }
+  
+  @Override
+  protected Iterator<Entry<Key,Value>> scan(final Range range) throws IOException {
+    if (range.getStartKey() != null && range.afterEndKey(range.getStartKey())) {
+      // the placeholder range of a load without matches, see getRowRanges
+      return Collections.<Entry<Key,Value>> emptyList().iterator();
+    }
+    final Iterator<Text> rows = lookupRows(range).iterator();
+    final Scanner scanner = getScanner();
+    return new Iterator<Entry<Key,Value>>() {
+      private Iterator<Entry<Key,Value>> current = Collections.<Entry<Key,Value>> emptyList().iterator();
+      
+      @Override
+      public boolean hasNext() {
+        while (!current.hasNext() && rows.hasNext()) {
+          scanner.setRange(range.clip(Range.exact(rows.next()), true));
+          current = scanner.iterator();
+        }
+        return current.hasNext();
+      }
+      
+      @Override
+      public Entry<Key,Value> next() {
+        if (!hasNext())
+          throw new NoSuchElementException();
+        return current.next();
+      }
+      
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+  
+  /**
+   * @return the rows the terms point to that overlap the given range
+   */
+  private SortedSet<Text> lookupRows(Range range) throws IOException {
+    SortedSet<Text> rows = new TreeSet<Text>();
+    BatchScanner scanner;
+    try {
+      scanner = getConnector().createBatchScanner(indexTable, authorizations, indexLookupThreads);
+    } catch (TableNotFoundException e) {
+      throw new IOException(e);
+    }
+    try {
+      scanner.setRanges(getIndexRanges(terms));
+      for (Entry<Key,Value> e : scanner) {
+        Text row = e.getKey().getColumnQualifier();
+        if (range.clip(Range.exact(row), true) != null)
+          rows.add(row);
+      }
+    } finally {
+      scanner.close();
+    }
+    return rows;
+  }
+  
+  static List<Range> getIndexRanges(String terms) {
+    List<Range> ranges = new ArrayList<Range>();
+    for (String term : terms.split(",")) {
+      if (term.endsWith("*"))
+        ranges.add(Range.prefix(term.substring(0, term.length() - 1)));
+      else
+        ranges.add(Range.exact(term));
+    }
+    return ranges;
+  }
+  
+  /**
+   * @return one range per tablet with any of the given rows, from the first to the last of them
+   */
+  static List<Range> getRowRanges(SortedSet<Text> rows, Collection<Text> tabletSplits) {
+    List<Range> ranges = new ArrayList<Range>();
+    Iterator<Text> splits = new TreeSet<Text>(tabletSplits).iterator();
+    Text tabletEnd = splits.hasNext() ? splits.next() : null;
+    Text first = null;
+    Text last = null;
+    for (Text row : rows) {
+      if (tabletEnd != null && row.compareTo(tabletEnd) > 0) {
+        // tablets end at their split row, inclusive
+        if (first != null)
+          ranges.add(new Range(first, true, last, true));
+        first = null;
+        while (tabletEnd != null && row.compareTo(tabletEnd) > 0)
+          tabletEnd = splits.hasNext() ? splits.next() : null;
+      }
+      if (first == null)
+        first = row;
+      last = row;
+    }
+    if (first != null)
+      ranges.add(new Range(first, true, last, true));
+    
+    if (ranges.isEmpty()) {
+      // an empty list of ranges would make the input format read the whole table, so read an empty range instead
+      Key empty = new Key();
+      ranges.add(new Range(empty, true, empty, false));
+    }
+    return ranges;
+  }
+}
@@ -19,33 +19,94 @@ package org.apache.accumulo.pig;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
 
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
+import org.apache.pig.LoadPushDown;
 import org.apache.pig.backend.executionengine.ExecException;
 import org.apache.pig.data.DataByteArray;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.logicalLayer.FrontendException;
+import org.apache.pig.impl.util.UDFContext;
 
 /**
  * A LoadStoreFunc for retrieving data from and storing data to Accumulo
  * 
  * A Key/Val pair will be returned as tuples: (key, colfam, colqual, colvis, timestamp, value). All fields except timestamp are DataByteArray, timestamp is a
- * long.
+ * long. The type of value depends on the codec, see ValueCodecs.
  * 
  * Tuples can be written in 2 forms: (key, colfam, colqual, colvis, value) OR (key, colfam, colqual, value)
  * 
+ * When the store location specifies operations=true, every tuple starts with an extra 'P' or 'D' field. 'P' tuples are written as above, 'D' tuples delete a
+ * cell and take the forms: ('D', key, colfam, colqual, colvis) OR ('D', key, colfam, colqual). Consecutive tuples for the same row are sent as one mutation.
+ * 
+ * When the load has a schema and the script never uses the value field, Pig pushes that projection down and the value field is loaded as null. The tablet
+ * servers then drop the values before sending them, so large values never reach the tasks, and nothing is decompressed or decoded.
+ * 
  */
-public class AccumuloStorage extends AbstractAccumuloStorage {
+public class AccumuloStorage extends AbstractAccumuloStorage implements LoadPushDown {
   private static final Log LOG = LogFactory.getLog(AccumuloStorage.class);
   
+  static final int VALUE_FIELD = 5;
+  static final int VALUE_DROPPING_PRIORITY = 50;
+  private static final String VALUE_REQUIRED = "value_required";
+  
+  private String signature;
+  private Boolean valueRequired;
+  
   public AccumuloStorage() {}
   
+  @Override
+  public void setUDFContextSignature(String signature) {
+    this.signature = signature;
+    valueRequired = null;
+  }
+  
+  private Properties getUDFProperties() {
+    return UDFContext.getUDFContext().getUDFProperties(getClass(), new String[] {signature});
+  }
+  
+  @Override
+  public List<OperatorSet> getFeatures() {
+    return Collections.singletonList(OperatorSet.PROJECTION);
+  }
+  
+  @Override
+  public RequiredFieldResponse pushProjection(RequiredFieldList requiredFieldList) throws FrontendException {
+    boolean required = requiredFieldList == null || requiredFieldList.getFields() == null;
+    if (!required) {
+      for (RequiredField field : requiredFieldList.getFields())
+        required |= field.getIndex() == VALUE_FIELD;
+    }
+    getUDFProperties().setProperty(VALUE_REQUIRED, Boolean.toString(required));
+    valueRequired = required;
+    // the tuples keep their shape, so Pig still does the projection itself
+    return new RequiredFieldResponse(false);
+  }
+  
+  boolean isValueRequired() {
+    if (valueRequired == null)
+      valueRequired = !"false".equals(getUDFProperties().getProperty(VALUE_REQUIRED));
+    return valueRequired;
+  }
+  
+  @Override
+  protected void configureInputFormat(Configuration conf) {
+    if (!isValueRequired())
+      AccumuloInputFormat.addIterator(conf, new IteratorSetting(VALUE_DROPPING_PRIORITY, "dropvalues", ValueDroppingIterator.class));
+  }
+  
   @Override
   protected Tuple getTuple(Key key, Value value) throws IOException {
     // and wrap it in a tuple
@@ -55,29 +116,58 @@ public class AccumuloStorage extends AbstractAccumuloStorage {
     tuple.set(2, new DataByteArray(key.getColumnQualifier().getBytes()));
     tuple.set(3, new DataByteArray(key.getColumnVisibility().getBytes()));
     tuple.set(4, new Long(key.getTimestamp()));
-    tuple.set(5, new DataByteArray(value.get()));
+    if (isValueRequired())
+      tuple.set(VALUE_FIELD, decodeValue(value));
     return tuple;
   }
   
   @Override
-  public Collection<Mutation> getMutations(Tuple tuple) throws ExecException, IOException {
-    Mutation mut = new Mutation(Utils.objToText(tuple.get(0)));
-    Text cf = Utils.objToText(tuple.get(1));
-    Text cq = Utils.objToText(tuple.get(2));
+  protected Collection<Mutation> getMutations(Tuple tuple, Long timestamp) throws ExecException, IOException {
+    if (!operations)
+      return getMutations(tuple, 0, timestamp);
     
-    if (tuple.size() > 4) {
-      Text cv = Utils.objToText(tuple.get(3));
-      Value val = new Value(Utils.objToBytes(tuple.get(4)));
-      if (cv.getLength() == 0) {
-        mut.put(cf, cq, val);
-      } else {
-        mut.put(cf, cq, new ColumnVisibility(cv), val);
-      }
+    String op = tuple.get(0) == null ? null : tuple.get(0).toString();
+    if ("P".equals(op))
+      return getMutations(tuple, 1, timestamp);
+    else if ("D".equals(op))
+      return getDeletes(tuple, 1, timestamp);
+    else
+      throw new IOException("Expected the first field to be one of 'P' or 'D': " + op);
+  }
+  
+  private Collection<Mutation> getMutations(Tuple tuple, int offset, Long timestamp) throws ExecException, IOException {
+    Mutation mut = new Mutation(Utils.objToText(tuple.get(offset)));
+    Text cf = Utils.objToText(tuple.get(offset + 1));
+    Text cq = Utils.objToText(tuple.get(offset + 2));
+    
+    ColumnVisibility cv = new ColumnVisibility();
+    Value val;
+    if (tuple.size() - offset > 4) {
+      cv = new ColumnVisibility(Utils.objToText(tuple.get(offset + 3)));
+      val = encodeValue(tuple.get(offset + 4));
     } else {
-      Value val = new Value(Utils.objToBytes(tuple.get(3)));
-      mut.put(cf, cq, val);
+      val = encodeValue(tuple.get(offset + 3));
     }
     
+    if (timestamp == null)
+      mut.put(cf, cq, cv, val);
+    else
+      mut.put(cf, cq, cv, timestamp, val);
+    
+    return Collections.singleton(mut);
+  }
+  
+  private Collection<Mutation> getDeletes(Tuple tuple, int offset, Long timestamp) throws ExecException, IOException {
+    Mutation mut = new Mutation(Utils.objToText(tuple.get(offset)));
+    Text cf = Utils.objToText(tuple.get(offset + 1));
+    Text cq = Utils.objToText(tuple.get(offset + 2));
+    ColumnVisibility cv = new ColumnVisibility(tuple.size() - offset > 3 ? Utils.objToText(tuple.get(offset + 3)) : new Text());
+    
+    if (timestamp == null)
+      mut.putDelete(cf, cq, cv);
+    else
+      mut.putDelete(cf, cq, cv, timestamp);
+    
     return Collections.singleton(mut);
   }
 }
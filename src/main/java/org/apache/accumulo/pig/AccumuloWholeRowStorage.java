@@ -20,7 +20,9 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedMap;
 
@@ -49,28 +51,102 @@ import org.apache.pig.data.TupleFactory;
  * 
  * Tuples can be written in 2 forms: (key, colfam, colqual, colvis, value) OR (key, colfam, colqual, value)
  * 
+ * With the 'map' format a row is returned as (key, map[colfam:colqual -> value]), with the 'family_map' format as (key, map[colfam -> map[colqual -> value]]).
+ * Only the latest version of each column, by timestamp across all of its visibilities, is kept in a map. Either kind of map can be written back.
+ * 
+ * When a maximum number of cells per row is given, larger rows are returned in pieces of at most that many cells and a chunk number is added to every tuple:
+ * (key, chunk, bag) or (key, chunk, map). Chunks of a row are numbered from 0 and always arrive together and in order.
+ * 
  */
 public class AccumuloWholeRowStorage extends AbstractAccumuloStorage {
   private static final Log LOG = LogFactory.getLog(AccumuloWholeRowStorage.class);
   
-  public AccumuloWholeRowStorage() {}
+  static enum RowFormat {
+    BAG, MAP, FAMILY_MAP
+  }
+  
+  private final RowFormat format;
+  private final int maxRowCells;
+  
+  private Text lastRow = null;
+  private int chunk = 0;
+  
+  public AccumuloWholeRowStorage() {
+    this("bag");
+  }
+  
+  public AccumuloWholeRowStorage(String format) {
+    this(format, "-1");
+  }
+  
+  public AccumuloWholeRowStorage(String format, String maxRowCells) {
+    this.format = RowFormat.valueOf(format.toUpperCase());
+    this.maxRowCells = Integer.parseInt(maxRowCells);
+  }
   
   @Override
   protected Tuple getTuple(Key key, Value value) throws IOException {
     
     SortedMap<Key,Value> rowKVs = WholeRowIterator.decodeRow(key, value);
+    Object columns = format == RowFormat.BAG ? rowToBag(rowKVs) : rowToMap(rowKVs);
+    
+    // and wrap it in a tuple
+    Text row = key.getRow();
+    if (maxRowCells <= 0) {
+      Tuple tuple = TupleFactory.getInstance().newTuple(2);
+      tuple.set(0, new DataByteArray(row.getBytes()));
+      tuple.set(1, columns);
+      return tuple;
+    }
+    
+    // the chunks of a row are always read one after another
+    chunk = row.equals(lastRow) ? chunk + 1 : 0;
+    lastRow = row;
+    
+    Tuple tuple = TupleFactory.getInstance().newTuple(3);
+    tuple.set(0, new DataByteArray(row.getBytes()));
+    tuple.set(1, chunk);
+    tuple.set(2, columns);
+    return tuple;
+  }
+  
+  private Map<String,Object> rowToMap(SortedMap<Key,Value> rowKVs) throws IOException {
+    // versions are sorted newest first only within a visibility, so compare timestamps to find the latest version of each column
+    Map<String,Map<String,Entry<Key,Value>>> latest = new HashMap<String,Map<String,Entry<Key,Value>>>();
+    for (Entry<Key,Value> e : rowKVs.entrySet()) {
+      String cf = e.getKey().getColumnFamily().toString();
+      String cq = e.getKey().getColumnQualifier().toString();
+      
+      Map<String,Entry<Key,Value>> family = latest.get(cf);
+      if (family == null) {
+        family = new HashMap<String,Entry<Key,Value>>();
+        latest.put(cf, family);
+      }
+      Entry<Key,Value> current = family.get(cq);
+      if (current == null || e.getKey().getTimestamp() > current.getKey().getTimestamp())
+        family.put(cq, e);
+    }
+    
+    Map<String,Object> map = new HashMap<String,Object>();
+    for (Entry<String,Map<String,Entry<Key,Value>>> family : latest.entrySet()) {
+      Map<String,Object> columns = format == RowFormat.FAMILY_MAP ? new HashMap<String,Object>() : map;
+      for (Entry<String,Entry<Key,Value>> column : family.getValue().entrySet()) {
+        String name = format == RowFormat.FAMILY_MAP ? column.getKey() : family.getKey() + ":" + column.getKey();
+        columns.put(name, decodeValue(column.getValue().getValue()));
+      }
+      if (format == RowFormat.FAMILY_MAP)
+        map.put(family.getKey(), columns);
+    }
+    return map;
+  }
+  
+  private DefaultDataBag rowToBag(SortedMap<Key,Value> rowKVs) throws IOException {
     List<Tuple> columns = new ArrayList<Tuple>(rowKVs.size());
     for (Entry<Key,Value> e : rowKVs.entrySet()) {
       columns.add(columnToTuple(e.getKey().getColumnFamily(), e.getKey().getColumnQualifier(), e.getKey().getColumnVisibility(), e.getKey().getTimestamp(),
           e.getValue()));
     }
-    
-    // and wrap it in a tuple
-    Tuple tuple = TupleFactory.getInstance().newTuple(2);
-    tuple.set(0, new DataByteArray(key.getRow().getBytes()));
-    tuple.set(1, new DefaultDataBag(columns));
-    
-    return tuple;
+    return new DefaultDataBag(columns);
   }
   
   private Tuple columnToTuple(Text colfam, Text colqual, Text colvis, long ts, Value val) throws IOException {
@@ -79,29 +155,77 @@ public class AccumuloWholeRowStorage extends AbstractAccumuloStorage {
     tuple.set(1, new DataByteArray(colqual.getBytes()));
     tuple.set(2, new DataByteArray(colvis.getBytes()));
     tuple.set(3, new Long(ts));
-    tuple.set(4, new DataByteArray(val.get()));
+    tuple.set(4, decodeValue(val));
     return tuple;
   }
   
   protected void configureInputFormat(Configuration conf) {
-    AccumuloInputFormat.addIterator(conf, new IteratorSetting(10, WholeRowIterator.class));
+    AccumuloInputFormat.addIterator(conf, getIteratorSetting());
   }
   
   @Override
-  public Collection<Mutation> getMutations(Tuple tuple) throws ExecException, IOException {
+  public void seekNear(Tuple keys) throws IOException {
+    lastRow = null;
+    super.seekNear(keys);
+  }
+  
+  IteratorSetting getIteratorSetting() {
+    if (maxRowCells <= 0)
+      return new IteratorSetting(10, WholeRowIterator.class);
+    
+    IteratorSetting is = new IteratorSetting(10, ChunkedWholeRowIterator.class);
+    ChunkedWholeRowIterator.setMaxCells(is, maxRowCells);
+    return is;
+  }
+  
+  @Override
+  protected Collection<Mutation> getMutations(Tuple tuple, Long timestamp) throws ExecException, IOException {
     
     Mutation mut = new Mutation(Utils.objToText(tuple.get(0)));
-    DefaultDataBag columns = (DefaultDataBag) tuple.get(1);
+    // chunked rows carry the chunk number before the columns
+    Object columnsField = tuple.get(tuple.size() - 1);
+    if (columnsField instanceof Map) {
+      mapToMutation((Map<?,?>) columnsField, mut, timestamp);
+      return Collections.singleton(mut);
+    }
+    
+    DefaultDataBag columns = (DefaultDataBag) columnsField;
     for (Tuple column : columns) {
       Text cf = Utils.objToText(column.get(0));
       Text cq = Utils.objToText(column.get(1));
       Text cv = Utils.objToText(column.get(2));
       Long ts = (Long) column.get(3);
-      Value val = new Value(Utils.objToBytes(column.get(4)));
+      Value val = encodeValue(column.get(4));
       
       mut.put(cf, cq, new ColumnVisibility(cv), ts, val);
     }
     
     return Collections.singleton(mut);
   }
+  
+  private void mapToMutation(Map<?,?> map, Mutation mut, Long timestamp) throws IOException {
+    for (Entry<?,?> e : map.entrySet()) {
+      String key = e.getKey().toString();
+      if (e.getValue() instanceof Map) {
+        // colfam -> map[colqual -> value]
+        Text cf = new Text(key);
+        for (Entry<?,?> column : ((Map<?,?>) e.getValue()).entrySet()) {
+          put(mut, cf, new Text(column.getKey().toString()), timestamp, encodeValue(column.getValue()));
+        }
+      } else {
+        // colfam:colqual -> value
+        int sep = key.indexOf(':');
+        Text cf = new Text(sep < 0 ? key : key.substring(0, sep));
+        Text cq = new Text(sep < 0 ? "" : key.substring(sep + 1));
+        put(mut, cf, cq, timestamp, encodeValue(e.getValue()));
+      }
+    }
+  }
+  
+  private static void put(Mutation mut, Text cf, Text cq, Long timestamp, Value val) {
+    if (timestamp == null)
+      mut.put(cf, cq, val);
+    else
+      mut.put(cf, cq, timestamp, val);
+  }
 }
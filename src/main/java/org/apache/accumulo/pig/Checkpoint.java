@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+
+/**
+ * The files behind a checkpointed load
+ * 
+ * The timestamp everything up to which has been loaded is kept in the checkpoint file itself. The upper bound of a load that has been planned but not yet
+ * committed is kept in path.pending, and is reused by every run until it is committed, so a failed or uncommitted run is simply read again. path.tmp only
+ * exists while a commit is replacing the checkpoint file.
+ * 
+ * Pig does not tell a LoadFunc when the job reading it has succeeded, so a checkpoint has to be committed explicitly once it has, e.g. from the script with:
+ * 
+ * sh hadoop jar accumulo-pig.jar org.apache.accumulo.pig.Checkpoint path
+ * 
+ */
+public class Checkpoint {
+  private static final Log LOG = LogFactory.getLog(Checkpoint.class);
+  
+  /**
+   * @return the committed timestamp of the checkpoint, or null if nothing has been committed yet
+   */
+  public static Long read(Configuration conf, String checkpoint) throws IOException {
+    Path path = new Path(checkpoint);
+    FileSystem fs = path.getFileSystem(conf);
+    if (fs.exists(path))
+      return readTimestamp(fs, path);
+    
+    // a commit that failed after removing the old file has already written the new one
+    Path tmp = new Path(checkpoint + ".tmp");
+    if (fs.exists(tmp))
+      return readTimestamp(fs, tmp);
+    return null;
+  }
+  
+  /**
+   * @return the upper bound of the next load, chosen now if no load is waiting to be committed
+   */
+  public static long plan(Configuration conf, String checkpoint) throws IOException {
+    Path pending = new Path(checkpoint + ".pending");
+    FileSystem fs = pending.getFileSystem(conf);
+    if (fs.exists(pending)) {
+      Long timestamp = readTimestamp(fs, pending);
+      if (timestamp != null)
+        return timestamp;
+    }
+    
+    long timestamp = System.currentTimeMillis();
+    writeTimestamp(fs, pending, timestamp);
+    return timestamp;
+  }
+  
+  /**
+   * Commits the pending upper bound of the checkpoint, if there is one
+   */
+  public static void commit(Configuration conf, String checkpoint) throws IOException {
+    Path pending = new Path(checkpoint + ".pending");
+    FileSystem fs = pending.getFileSystem(conf);
+    if (!fs.exists(pending)) {
+      LOG.info("checkpoint " + checkpoint + " has nothing to commit");
+      return;
+    }
+    
+    Long timestamp = readTimestamp(fs, pending);
+    if (timestamp != null) {
+      LOG.info("committing checkpoint " + checkpoint + " at " + timestamp);
+      write(conf, checkpoint, timestamp);
+    }
+    fs.delete(pending, false);
+  }
+  
+  static void write(Configuration conf, String checkpoint, long timestamp) throws IOException {
+    // write to a temporary file first so a failure part way through never leaves a truncated checkpoint behind
+    Path path = new Path(checkpoint);
+    Path tmp = new Path(checkpoint + ".tmp");
+    FileSystem fs = path.getFileSystem(conf);
+    
+    writeTimestamp(fs, tmp, timestamp);
+    if (fs.exists(path) && !fs.delete(path, false))
+      throw new IOException("Could not replace checkpoint " + checkpoint);
+    if (!fs.rename(tmp, path))
+      throw new IOException("Could not commit checkpoint " + checkpoint);
+  }
+  
+  private static Long readTimestamp(FileSystem fs, Path path) throws IOException {
+    FSDataInputStream in = fs.open(path);
+    try {
+      String line = new BufferedReader(new InputStreamReader(in)).readLine();
+      return line == null || line.trim().length() == 0 ? null : Long.parseLong(line.trim());
+    } finally {
+      in.close();
+    }
+  }
+  
+  private static void writeTimestamp(FileSystem fs, Path path, long timestamp) throws IOException {
+    FSDataOutputStream out = fs.create(path, true);
+    try {
+      out.writeBytes(Long.toString(timestamp) + "\n");
+    } finally {
+      out.close();
+    }
+  }
+  
+  public static void main(String[] args) throws IOException {
+    if (args.length == 0) {
+      System.err.println("usage: " + Checkpoint.class.getName() + " <checkpoint> [<checkpoint> ...]");
+      System.exit(1);
+    }
+    
+    Configuration conf = new Configuration();
+    for (String checkpoint : args)
+      commit(conf, checkpoint);
+  }
+}
@@ -0,0 +1,124 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
+
+/**
+ * Like WholeRowIterator, but never buffers more than max_cells cells of a row
+ * 
+ * A row with more cells is returned as several consecutive entries. Each entry is encoded with WholeRowIterator.encodeRow, so it can be decoded with
+ * WholeRowIterator.decodeRow, and is returned under the key of the last cell it contains, so a scan resumed after it continues with the next cell.
+ * 
+ */
+public class ChunkedWholeRowIterator implements SortedKeyValueIterator<Key,Value> {
+  
+  public static final String MAX_CELLS_OPTION = "max_cells";
+  
+  private SortedKeyValueIterator<Key,Value> sourceIter;
+  private int maxCells;
+  
+  private Key topKey;
+  private Value topValue;
+  
+  private List<Key> keys = new ArrayList<Key>();
+  private List<Value> values = new ArrayList<Value>();
+  
+  public ChunkedWholeRowIterator() {}
+  
+  ChunkedWholeRowIterator(SortedKeyValueIterator<Key,Value> source, int maxCells) {
+    this.sourceIter = source;
+    this.maxCells = maxCells;
+  }
+  
+  public static void setMaxCells(IteratorSetting is, int maxCells) {
+    is.addOption(MAX_CELLS_OPTION, Integer.toString(maxCells));
+  }
+  
+  @Override
+  public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+    sourceIter = source;
+    maxCells = Integer.parseInt(options.get(MAX_CELLS_OPTION));
+    if (maxCells < 1)
+      throw new IllegalArgumentException(MAX_CELLS_OPTION + " must be positive: " + maxCells);
+  }
+  
+  @Override
+  public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+    return new ChunkedWholeRowIterator(sourceIter.deepCopy(env), maxCells);
+  }
+  
+  @Override
+  public boolean hasTop() {
+    return topKey != null;
+  }
+  
+  @Override
+  public Key getTopKey() {
+    return topKey;
+  }
+  
+  @Override
+  public Value getTopValue() {
+    return topValue;
+  }
+  
+  @Override
+  public void next() throws IOException {
+    prepChunk();
+  }
+  
+  @Override
+  public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
+    // chunks are keyed by their last cell, so unlike WholeRowIterator a resumed scan can simply continue from the range it is given
+    sourceIter.seek(range, columnFamilies, inclusive);
+    prepChunk();
+  }
+  
+  private void prepChunk() throws IOException {
+    topKey = null;
+    topValue = null;
+    if (!sourceIter.hasTop())
+      return;
+    
+    keys.clear();
+    values.clear();
+    Key first = new Key(sourceIter.getTopKey());
+    while (sourceIter.hasTop() && keys.size() < maxCells && sourceIter.getTopKey().equals(first, PartialKey.ROW)) {
+      keys.add(new Key(sourceIter.getTopKey()));
+      values.add(new Value(sourceIter.getTopValue()));
+      sourceIter.next();
+    }
+    
+    topKey = keys.get(keys.size() - 1);
+    topValue = WholeRowIterator.encodeRow(keys, values);
+  }
+}
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.PartialKey;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.ValueFormatException;
+
+/**
+ * An iterator that reduces every row, or every column family within a row, to a single long.
+ * 
+ * The aggregate is returned under the key (row) or (row, colfam) respectively, with the result encoded as a decimal string. Values are expected to be decimal
+ * strings as well, except for COUNT which ignores them.
+ * 
+ */
+public class GroupAggregatingIterator implements SortedKeyValueIterator<Key,Value> {
+  
+  public static final String FUNCTION_OPTION = "function";
+  public static final String GROUP_OPTION = "group";
+  
+  public static enum Function {
+    COUNT, SUM, MIN, MAX
+  }
+  
+  public static enum Group {
+    ROW(PartialKey.ROW), COLFAM(PartialKey.ROW_COLFAM);
+    
+    final PartialKey partialKey;
+    
+    private Group(PartialKey partialKey) {
+      this.partialKey = partialKey;
+    }
+  }
+  
+  private SortedKeyValueIterator<Key,Value> sourceIter;
+  private Function function;
+  private Group group;
+  
+  private Key topKey;
+  private Value topValue;
+  
+  public GroupAggregatingIterator() {}
+  
+  GroupAggregatingIterator(SortedKeyValueIterator<Key,Value> source, Function function, Group group) {
+    this.sourceIter = source;
+    this.function = function;
+    this.group = group;
+  }
+  
+  public static void setFunction(IteratorSetting is, Function function) {
+    is.addOption(FUNCTION_OPTION, function.name());
+  }
+  
+  public static void setGroup(IteratorSetting is, Group group) {
+    is.addOption(GROUP_OPTION, group.name());
+  }
+  
+  @Override
+  public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+    sourceIter = source;
+    function = Function.valueOf(options.get(FUNCTION_OPTION));
+    group = options.containsKey(GROUP_OPTION) ? Group.valueOf(options.get(GROUP_OPTION)) : Group.ROW;
+  }
+  
+  @Override
+  public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+    return new GroupAggregatingIterator(sourceIter.deepCopy(env), function, group);
+  }
+  
+  @Override
+  public boolean hasTop() {
+    return topKey != null;
+  }
+  
+  @Override
+  public Key getTopKey() {
+    return topKey;
+  }
+  
+  @Override
+  public Value getTopValue() {
+    return topValue;
+  }
+  
+  @Override
+  public void next() throws IOException {
+    aggregate();
+  }
+  
+  @Override
+  public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
+    topKey = null;
+    topValue = null;
+    
+    Range seekRange = range;
+    if (range.getStartKey() != null && !range.isStartKeyInclusive()) {
+      // the scan is being resumed after a group that was already returned, so skip the remainder of it
+      Key followingKey = range.getStartKey().followingKey(group.partialKey);
+      if (range.afterEndKey(followingKey))
+        return;
+      seekRange = new Range(followingKey, true, range.getEndKey(), range.isEndKeyInclusive());
+    }
+    
+    sourceIter.seek(seekRange, columnFamilies, inclusive);
+    aggregate();
+  }
+  
+  private void aggregate() throws IOException {
+    topKey = null;
+    topValue = null;
+    if (!sourceIter.hasTop())
+      return;
+    
+    Key groupKey = new Key(sourceIter.getTopKey());
+    long result = 0;
+    boolean first = true;
+    while (sourceIter.hasTop() && sourceIter.getTopKey().equals(groupKey, group.partialKey)) {
+      if (function == Function.COUNT) {
+        result++;
+      } else {
+        long l = decode(sourceIter.getTopValue());
+        if (first)
+          result = l;
+        else if (function == Function.SUM)
+          result += l;
+        else if (function == Function.MIN)
+          result = Math.min(result, l);
+        else
+          result = Math.max(result, l);
+      }
+      first = false;
+      sourceIter.next();
+    }
+    
+    if (group == Group.ROW)
+      topKey = new Key(groupKey.getRow());
+    else
+      topKey = new Key(groupKey.getRow(), groupKey.getColumnFamily());
+    topValue = new Value(Long.toString(result).getBytes());
+  }
+  
+  private static long decode(Value value) {
+    try {
+      return Long.parseLong(new String(value.get()));
+    } catch (NumberFormatException e) {
+      throw new ValueFormatException(e);
+    }
+  }
+}
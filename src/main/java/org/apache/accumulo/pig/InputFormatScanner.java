@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.IOException;
+
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.ClientSideIteratorScanner;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.IsolatedScanner;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.util.Pair;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+
+/**
+ * Sets up a scanner from a job's AccumuloInputFormat settings the same way the input format's record reader does, so that a scan started outside the record
+ * reader returns exactly what the record reader would
+ * 
+ */
+class InputFormatScanner extends AccumuloInputFormat {
+  
+  /**
+   * @return the table the job reads, or null if no input has been configured
+   */
+  static String getTable(Configuration conf) {
+    return getTablename(conf);
+  }
+  
+  /**
+   * @return a scanner over the table the job reads, with its authorizations, columns, iterators, regular expressions, maximum versions, isolation and local
+   *         iterators
+   */
+  static Scanner createScanner(Connector conn, Configuration conf) throws IOException {
+    if (isOfflineScan(conf))
+      throw new IOException("offline scans can only be read by the record reader");
+    
+    Scanner scanner;
+    try {
+      scanner = conn.createScanner(getTablename(conf), getAuthorizations(conf));
+    } catch (TableNotFoundException e) {
+      throw new IOException(e);
+    }
+    if (isIsolated(conf))
+      scanner = new IsolatedScanner(scanner);
+    if (usesLocalIterators(conf))
+      scanner = new ClientSideIteratorScanner(scanner);
+    
+    try {
+      new Setup().setup(conf, scanner);
+    } catch (AccumuloException e) {
+      throw new IOException(e);
+    }
+    
+    for (Pair<Text,Text> c : getFetchedColumns(conf)) {
+      if (c.getSecond() == null)
+        scanner.fetchColumnFamily(c.getFirst());
+      else
+        scanner.fetchColumn(c.getFirst(), c.getSecond());
+    }
+    return scanner;
+  }
+  
+  /**
+   * The record reader's own setup steps, which are only reachable from a subclass of it
+   */
+  private static class Setup extends RecordReaderBase<Key,Value> {
+    void setup(Configuration conf, Scanner scanner) throws AccumuloException {
+      setupMaxVersions(conf, scanner);
+      setupRegex(new TaskAttemptContext(conf, new TaskAttemptID()), scanner);
+      setupIterators(conf, scanner);
+    }
+    
+    @Override
+    public boolean nextKeyValue() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Cuts a range into row aligned sub-ranges at a given set of rows, so that the number of map tasks does not have to follow the tablets of a table
+ * 
+ */
+public class RangeSplitter {
+  
+  /**
+   * Reads rows to split at from a file, one UTF-8 row per line. Empty lines are ignored.
+   */
+  public static SortedSet<Text> readSplits(Configuration conf, String file) throws IOException {
+    Path path = new Path(file);
+    SortedSet<Text> splits = new TreeSet<Text>();
+    FSDataInputStream in = path.getFileSystem(conf).open(path);
+    try {
+      BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.length() > 0)
+          splits.add(new Text(line));
+      }
+    } finally {
+      in.close();
+    }
+    return splits;
+  }
+  
+  /**
+   * Adds rows to the given splits so that every interval between two of them that overlaps [startRow, endRow] is cut into n pieces of about the same width in
+   * key space. An interval without a bound is cut as if rows could use every byte value, so rows of a narrow alphabet all end up in one piece of it; pass the
+   * first and last rows of the table (see {@link #firstRow(Scanner)} and {@link #lastRow(Scanner)}) instead of null where they are known.
+   * 
+   * @param startRow
+   *          the first row to subdivide, or null for the start of the table
+   * @param endRow
+   *          the last row to subdivide, or null for the end of the table
+   */
+  public static SortedSet<Text> subdivide(SortedSet<Text> splits, Text startRow, Text endRow, int n) {
+    SortedSet<Text> result = new TreeSet<Text>(splits);
+    
+    Text prev = null;
+    Iterator<Text> iter = splits.iterator();
+    while (true) {
+      Text next = iter.hasNext() ? iter.next() : null;
+      
+      Text lo = prev;
+      if (startRow != null && (lo == null || lo.compareTo(startRow) < 0))
+        lo = startRow;
+      Text hi = next;
+      if (endRow != null && (hi == null || hi.compareTo(endRow) > 0))
+        hi = endRow;
+      
+      if (lo == null || hi == null || lo.compareTo(hi) < 0)
+        result.addAll(interpolate(lo, hi, n));
+      
+      if (next == null)
+        break;
+      prev = next;
+    }
+    return result;
+  }
+  
+  /**
+   * @return the first row the scanner can see, or null if it sees none
+   */
+  public static Text firstRow(Scanner scanner) {
+    scanner.setBatchSize(1);
+    scanner.setRange(new Range());
+    Iterator<Entry<Key,Value>> iter = scanner.iterator();
+    return iter.hasNext() ? iter.next().getKey().getRow() : null;
+  }
+  
+  /**
+   * Finds the last row the scanner can see without reading the rows before it. Accumulo can not scan backwards, so the row is found one byte at a time, with a
+   * binary search over the byte values that some row continues the prefix found so far with. Each probe reads at most one entry.
+   * 
+   * @return the last row the scanner can see, or null if it sees none
+   */
+  public static Text lastRow(Scanner scanner) {
+    scanner.setBatchSize(1);
+    byte[] row = new byte[0];
+    if (!hasRowAtOrAfter(scanner, row))
+      return null;
+    while (true) {
+      // some row starts with row, and none is at or after row followed by a byte above hi
+      int lo = -1;
+      int hi = 0xff;
+      while (lo < hi) {
+        int mid = (lo + hi + 1) / 2;
+        if (hasRowAtOrAfter(scanner, append(row, mid)))
+          lo = mid;
+        else
+          hi = mid - 1;
+      }
+      if (lo < 0)
+        return new Text(row);
+      row = append(row, lo);
+    }
+  }
+  
+  private static boolean hasRowAtOrAfter(Scanner scanner, byte[] row) {
+    scanner.setRange(new Range(new Text(row), null));
+    return scanner.iterator().hasNext();
+  }
+  
+  private static byte[] append(byte[] row, int b) {
+    byte[] longer = Arrays.copyOf(row, row.length + 1);
+    longer[row.length] = (byte) b;
+    return longer;
+  }
+  
+  /**
+   * @param lo
+   *          the lower bound, or null for the empty row
+   * @param hi
+   *          the upper bound, or null for no upper bound
+   * @return up to n - 1 rows, evenly spaced strictly between lo and hi
+   */
+  static SortedSet<Text> interpolate(Text lo, Text hi, int n) {
+    byte[] loBytes = lo == null ? new byte[0] : Arrays.copyOf(lo.getBytes(), lo.getLength());
+    byte[] hiBytes = hi == null ? new byte[0] : Arrays.copyOf(hi.getBytes(), hi.getLength());
+    // two more bytes than either bound leaves room for at least 65536 rows between them
+    int length = Math.max(loBytes.length, hiBytes.length) + 2;
+    
+    BigInteger loInt = new BigInteger(1, Arrays.copyOf(loBytes, length));
+    BigInteger hiInt;
+    if (hi == null) {
+      byte[] max = new byte[length];
+      Arrays.fill(max, (byte) 0xff);
+      hiInt = new BigInteger(1, max);
+    } else {
+      hiInt = new BigInteger(1, Arrays.copyOf(hiBytes, length));
+    }
+    
+    SortedSet<Text> rows = new TreeSet<Text>();
+    BigInteger width = hiInt.subtract(loInt);
+    for (int i = 1; i < n; i++) {
+      BigInteger row = loInt.add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(n)));
+      Text t = new Text(toRow(row, length));
+      if ((lo == null || t.compareTo(lo) > 0) && (hi == null || t.compareTo(hi) < 0))
+        rows.add(t);
+    }
+    return rows;
+  }
+  
+  private static byte[] toRow(BigInteger i, int length) {
+    byte[] b = i.toByteArray();
+    byte[] row = new byte[length];
+    int copy = Math.min(b.length, length);
+    System.arraycopy(b, b.length - copy, row, length - copy, copy);
+    
+    // trailing zeros only make a row sort later without adding anything
+    int end = length;
+    while (end > 0 && row[end - 1] == 0)
+      end--;
+    return Arrays.copyOf(row, end);
+  }
+  
+  /**
+   * @return the pieces of range between consecutive splits, each ending with the last key of a split row, the same way tablets end
+   */
+  public static List<Range> split(Range range, SortedSet<Text> splits) {
+    List<Range> ranges = new ArrayList<Range>(splits.size() + 1);
+    Text prev = null;
+    for (Text split : splits) {
+      addClipped(ranges, range, new Range(prev, false, split, true));
+      prev = split;
+    }
+    addClipped(ranges, range, new Range(prev, false, null, false));
+    return ranges;
+  }
+  
+  private static void addClipped(List<Range> ranges, Range range, Range piece) {
+    Range clipped = range.clip(piece, true);
+    if (clipped != null)
+      ranges.add(clipped);
+  }
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.accumulo.core.client.mapreduce.AccumuloOutputFormat;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+
+/**
+ * An AccumuloOutputFormat that merges consecutive mutations for the same row of the same table into one
+ * 
+ * Writing many small mutations for a row, e.g. one delete per cell, then costs the batch writer a single mutation. A merged mutation is sent on once it
+ * reaches a tenth of the write buffer, when the row changes or when the writer is closed.
+ * 
+ */
+public class RowMergingAccumuloOutputFormat extends AccumuloOutputFormat {
+  
+  @Override
+  public RecordWriter<Text,Mutation> getRecordWriter(TaskAttemptContext context) throws IOException {
+    return new RowMergingRecordWriter(super.getRecordWriter(context), getMaxMutationBufferSize(context.getConfiguration()) / 10);
+  }
+  
+  static class RowMergingRecordWriter extends RecordWriter<Text,Mutation> {
+    private final RecordWriter<Text,Mutation> writer;
+    private final long maxMergedBytes;
+    
+    private Text pendingTable = null;
+    private Mutation pending = null;
+    private boolean merged = false;
+    private long pendingBytes = 0;
+    
+    RowMergingRecordWriter(RecordWriter<Text,Mutation> writer, long maxMergedBytes) {
+      this.writer = writer;
+      this.maxMergedBytes = maxMergedBytes;
+    }
+    
+    @Override
+    public void write(Text table, Mutation mutation) throws IOException, InterruptedException {
+      if (pending != null && pendingTable.equals(table) && Arrays.equals(pending.getRow(), mutation.getRow())) {
+        if (!merged) {
+          // only copy updates once a row actually has more than one mutation
+          Mutation first = pending;
+          pending = new Mutation(new Text(first.getRow()));
+          Utils.copyUpdates(first, pending, null);
+          merged = true;
+        }
+        Utils.copyUpdates(mutation, pending, null);
+      } else {
+        flush();
+        pendingTable = new Text(table);
+        pending = mutation;
+      }
+      
+      // numBytes() serializes a mutation, so only ask the incoming ones and keep a running total for the merged one
+      pendingBytes += mutation.numBytes();
+      if (pendingBytes >= maxMergedBytes)
+        flush();
+    }
+    
+    private void flush() throws IOException, InterruptedException {
+      if (pending != null)
+        writer.write(pendingTable, pending);
+      pending = null;
+      merged = false;
+      pendingBytes = 0;
+    }
+    
+    @Override
+    public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+      flush();
+      writer.close(context);
+    }
+  }
+}
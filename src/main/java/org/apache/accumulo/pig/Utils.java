@@ -16,6 +16,10 @@
  */
 package org.apache.accumulo.pig;
 
+import org.apache.accumulo.core.data.ColumnUpdate;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.hadoop.io.Text;
 import org.apache.pig.data.DataByteArray;
 
@@ -49,4 +53,28 @@ public class Utils {
     
     return ((DataByteArray) o).get();
   }
+  
+  /**
+   * Adds the updates of one mutation to another. Updates without a timestamp are given the supplied timestamp, unless it is null.
+   */
+  public static void copyUpdates(Mutation from, Mutation to, Long timestamp) {
+    for (ColumnUpdate update : from.getUpdates()) {
+      Text cf = new Text(update.getColumnFamily());
+      Text cq = new Text(update.getColumnQualifier());
+      ColumnVisibility cv = new ColumnVisibility(update.getColumnVisibility());
+      
+      if (update.hasTimestamp() || timestamp != null) {
+        long ts = update.hasTimestamp() ? update.getTimestamp() : timestamp;
+        if (update.isDeleted())
+          to.putDelete(cf, cq, cv, ts);
+        else
+          to.put(cf, cq, cv, ts, new Value(update.getValue()));
+      } else {
+        if (update.isDeleted())
+          to.putDelete(cf, cq, cv);
+        else
+          to.put(cf, cq, cv, new Value(update.getValue()));
+      }
+    }
+  }
 }
@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.IOException;
+
+/**
+ * Converts between the bytes of a cell value and the Pig field that represents it
+ * 
+ * A codec is chosen with the codec=name parameter of a location, where name is one of the built in codecs in ValueCodecs or the class name of an
+ * implementation with a no argument constructor.
+ * 
+ */
+public interface ValueCodec {
+  
+  /**
+   * @return a Pig value (DataByteArray, String, Long, Tuple, Map, ...) for the bytes of a cell value
+   */
+  public Object decode(byte[] bytes) throws IOException;
+  
+  /**
+   * @return the bytes to store for a field of a tuple being written
+   */
+  public byte[] encode(Object o) throws IOException;
+}
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.IOException;
+
+import org.apache.accumulo.core.iterators.LongCombiner;
+import org.apache.accumulo.core.iterators.TypedValueCombiner.Encoder;
+import org.apache.accumulo.core.iterators.ValueFormatException;
+import org.apache.pig.impl.PigContext;
+
+/**
+ * The built in ValueCodecs
+ * 
+ * raw: values are DataByteArrays (the default)
+ * 
+ * string: values are chararrays encoded as UTF-8
+ * 
+ * long, varlong, fixedlong: values are longs, encoded the same way as LongCombiner's STRING, VARLEN and FIXEDLEN types
+ * 
+ */
+public class ValueCodecs {
+  
+  /**
+   * @return the codec with the given built in name or class spec, or null for raw. Classes are loaded the way Pig loads UDFs, so they can come from
+   *         REGISTERed jars and take constructor arguments, e.g. com.example.MyCodec('arg').
+   */
+  public static ValueCodec forName(String name) throws IOException {
+    if (name.equals("raw"))
+      return null;
+    else if (name.equals("string"))
+      return new StringCodec();
+    else if (name.equals("long"))
+      return new LongCodec(LongCombiner.STRING_ENCODER);
+    else if (name.equals("varlong"))
+      return new LongCodec(LongCombiner.VAR_LEN_ENCODER);
+    else if (name.equals("fixedlong"))
+      return new LongCodec(LongCombiner.FIXED_LEN_ENCODER);
+    
+    Object codec;
+    try {
+      codec = PigContext.instantiateFuncFromSpec(name);
+    } catch (RuntimeException e) {
+      throw new IOException("Could not load codec " + name + ": " + e.getMessage(), e);
+    }
+    if (!(codec instanceof ValueCodec))
+      throw new IOException("Could not load codec " + name + ": " + codec.getClass().getName() + " is not a ValueCodec");
+    return (ValueCodec) codec;
+  }
+  
+  public static class StringCodec implements ValueCodec {
+    @Override
+    public Object decode(byte[] bytes) throws IOException {
+      return new String(bytes, "UTF-8");
+    }
+    
+    @Override
+    public byte[] encode(Object o) throws IOException {
+      if (o instanceof String)
+        return ((String) o).getBytes("UTF-8");
+      return Utils.objToBytes(o);
+    }
+  }
+  
+  public static class LongCodec implements ValueCodec {
+    private final Encoder<Long> encoder;
+    
+    public LongCodec(Encoder<Long> encoder) {
+      this.encoder = encoder;
+    }
+    
+    @Override
+    public Object decode(byte[] bytes) throws IOException {
+      try {
+        return encoder.decode(bytes);
+      } catch (ValueFormatException e) {
+        throw new IOException(e);
+      }
+    }
+    
+    @Override
+    public byte[] encode(Object o) throws IOException {
+      if (o instanceof Number)
+        return encoder.encode(((Number) o).longValue());
+      try {
+        return encoder.encode(Long.parseLong(new String(Utils.objToBytes(o))));
+      } catch (NumberFormatException e) {
+        throw new IOException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.accumulo.core.iterators.ValueFormatException;
+
+/**
+ * Compresses single cell values with Deflate
+ * 
+ * A compressed value starts with a 4 byte magic, the last byte of which names the algorithm, followed by the length of the uncompressed value as a 4 byte big
+ * endian int and the deflated bytes.
+ * 
+ */
+public class ValueCompression {
+  
+  private static final byte[] DEFLATE_MAGIC = new byte[] {0, 'P', 'Z', 1};
+  private static final int HEADER_LENGTH = DEFLATE_MAGIC.length + 4;
+  // deflate can not shrink data by more than this, so a longer length in the header can only be corrupt
+  private static final int MAX_DEFLATE_RATIO = 1032;
+  
+  public static boolean isCompressed(byte[] value) {
+    if (value.length < HEADER_LENGTH)
+      return false;
+    for (int i = 0; i < DEFLATE_MAGIC.length; i++) {
+      if (value[i] != DEFLATE_MAGIC[i])
+        return false;
+    }
+    return true;
+  }
+  
+  /**
+   * @return the compressed value, or the value itself if compressing it would not make it any smaller
+   */
+  public static byte[] compress(byte[] value) {
+    Deflater deflater = new Deflater();
+    ByteArrayOutputStream out = new ByteArrayOutputStream(value.length / 2 + HEADER_LENGTH);
+    try {
+      out.write(DEFLATE_MAGIC, 0, DEFLATE_MAGIC.length);
+      out.write(value.length >>> 24);
+      out.write(value.length >>> 16);
+      out.write(value.length >>> 8);
+      out.write(value.length);
+      
+      deflater.setInput(value);
+      deflater.finish();
+      byte[] buf = new byte[4096];
+      while (!deflater.finished()) {
+        int n = deflater.deflate(buf);
+        out.write(buf, 0, n);
+        if (out.size() >= value.length)
+          return value;
+      }
+    } finally {
+      deflater.end();
+    }
+    return out.toByteArray();
+  }
+  
+  public static byte[] decompress(byte[] value) {
+    int length = ((value[4] & 0xff) << 24) | ((value[5] & 0xff) << 16) | ((value[6] & 0xff) << 8) | (value[7] & 0xff);
+    if (length < 0 || length > (long) (value.length - HEADER_LENGTH) * MAX_DEFLATE_RATIO)
+      throw new ValueFormatException("Invalid uncompressed length " + length + " for " + value.length + " compressed bytes");
+    byte[] b = new byte[length];
+    
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(value, HEADER_LENGTH, value.length - HEADER_LENGTH);
+      int off = 0;
+      while (off < length && !inflater.finished()) {
+        int n = inflater.inflate(b, off, length - off);
+        if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+          throw new ValueFormatException("Truncated compressed value");
+        off += n;
+      }
+      if (off < length)
+        throw new ValueFormatException("Expected " + length + " bytes but only found " + off);
+    } catch (DataFormatException e) {
+      throw new ValueFormatException(e);
+    } finally {
+      inflater.end();
+    }
+    return b;
+  }
+}
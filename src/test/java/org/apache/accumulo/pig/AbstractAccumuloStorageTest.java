@@ -16,23 +16,51 @@
  */
 package org.apache.accumulo.pig;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map.Entry;
 
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
 import org.apache.accumulo.core.client.mapreduce.AccumuloOutputFormat;
+import org.apache.accumulo.core.client.mapreduce.InputFormatBase.RangeInputSplit;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.data.ColumnUpdate;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.ValueFormatException;
+import org.apache.accumulo.core.iterators.user.RegExFilter;
+import org.apache.accumulo.core.iterators.user.TimestampFilter;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.util.Pair;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
 import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
 import org.apache.pig.data.Tuple;
+import org.apache.pig.data.TupleFactory;
+import org.apache.pig.impl.plan.OperatorKey;
 import org.junit.Test;
 
 public class AbstractAccumuloStorageTest {
@@ -109,7 +137,7 @@ public class AbstractAccumuloStorageTest {
     AbstractAccumuloStorage s = new AbstractAccumuloStorage() {
       
       @Override
-      public Collection<Mutation> getMutations(Tuple tuple) {
+      protected Collection<Mutation> getMutations(Tuple tuple, Long timestamp) {
         return null;
       }
       
@@ -135,6 +163,38 @@ public class AbstractAccumuloStorageTest {
     TestUtils.assertConfigurationsEqual(expectedConf, actualConf);
   }
   
+  @Test
+  public void testSetLoadLocationRepeatedly() throws IOException {
+    AbstractAccumuloStorage s = getAbstractAccumuloStorage();
+    
+    for (int i = 0; i < 3; i++)
+      s.setLocation(getDefaultLoadLocation(), new Job());
+    assertEquals(3, s.columnFamilyColumnQualifierPairs.size());
+    
+    s.setLocation(getDefaultLoadLocation().replace("columns=col1|cq1,col2|cq2,col3", "columns=col4"), new Job());
+    assertEquals(1, s.columnFamilyColumnQualifierPairs.size());
+    assertEquals(new Text("col4"), s.columnFamilyColumnQualifierPairs.get(0).getFirst());
+  }
+  
+  @Test
+  public void testSetLocationResetsOptions() throws IOException {
+    AbstractAccumuloStorage s = getAbstractAccumuloStorage();
+    
+    s.setStoreLocation(getDefaultStoreLocation() + "&checkpoint=/tmp/ts&parallelism=4&codec=string&compression=deflate&idempotent=true&write_timestamp=5", new Job());
+    assertEquals("/tmp/ts", s.checkpoint);
+    assertEquals(4, s.parallelism);
+    assertEquals(7, s.maxWriteThreads);
+    
+    s.setStoreLocation("accumulo://table1?instance=myinstance&user=root&password=secret&zookeepers=127.0.0.1:2181", new Job());
+    assertNull(s.checkpoint);
+    assertEquals(0, s.parallelism);
+    assertEquals(10, s.maxWriteThreads);
+    assertNull(s.codec);
+    assertFalse(s.compression);
+    assertFalse(s.idempotent);
+    assertNull(s.writeTimestamp);
+  }
+  
   @Test
   public void testSetStoreLocation() throws IOException {
     AbstractAccumuloStorage s = getAbstractAccumuloStorage();
@@ -148,4 +208,376 @@ public class AbstractAccumuloStorageTest {
     
     TestUtils.assertConfigurationsEqual(expectedConf, actualConf);
   }
+  
+  @Test
+  public void testGetOutputFormat() throws IOException {
+    AbstractAccumuloStorage s = getAbstractAccumuloStorage();
+    s.setStoreLocation(getDefaultStoreLocation(), new Job());
+    assertEquals(AccumuloOutputFormat.class, s.getOutputFormat().getClass());
+    
+    s.setStoreLocation(getDefaultStoreLocation() + "&operations=true", new Job());
+    assertEquals(RowMergingAccumuloOutputFormat.class, s.getOutputFormat().getClass());
+  }
+  
+  @Test
+  public void testCheckpoint() throws IOException {
+    File dir = File.createTempFile("checkpoint", "");
+    dir.delete();
+    dir.mkdir();
+    String checkpoint = new File(dir, "table1.ts").getAbsolutePath();
+    
+    Job job = new Job();
+    Checkpoint.write(job.getConfiguration(), checkpoint, 1000L);
+    
+    AbstractAccumuloStorage s = getAbstractAccumuloStorage();
+    Job actual = new Job();
+    s.setLocation(getDefaultLoadLocation() + "&checkpoint=" + checkpoint, actual);
+    Configuration actualConf = actual.getConfiguration();
+    
+    long next = actualConf.getLong(AbstractAccumuloStorage.CHECKPOINT_PREFIX + checkpoint, -1);
+    Job expected = getDefaultExpectedLoadJob();
+    Configuration expectedConf = expected.getConfiguration();
+    IteratorSetting is = new IteratorSetting(AbstractAccumuloStorage.CHECKPOINT_ITERATOR_PRIORITY, "checkpoint", TimestampFilter.class);
+    TimestampFilter.setRange(is, 1000L, false, next, true);
+    AccumuloInputFormat.addIterator(expectedConf, is);
+    expectedConf.setLong(AbstractAccumuloStorage.CHECKPOINT_START_PREFIX + checkpoint, 1000L);
+    expectedConf.setLong(AbstractAccumuloStorage.CHECKPOINT_PREFIX + checkpoint, next);
+    
+    TestUtils.assertConfigurationsEqual(expectedConf, actualConf);
+    
+    // planning again before the checkpoint is committed reads the same window
+    Job again = new Job();
+    getAbstractAccumuloStorage().setLocation(getDefaultLoadLocation() + "&checkpoint=" + checkpoint, again);
+    TestUtils.assertConfigurationsEqual(expectedConf, again.getConfiguration());
+    
+    Checkpoint.commit(job.getConfiguration(), checkpoint);
+    assertEquals(new Long(next), Checkpoint.read(job.getConfiguration(), checkpoint));
+    
+    for (File f : dir.listFiles())
+      f.delete();
+    dir.delete();
+  }
+  
+  static RangeInputSplit getSplit(Range range) throws Exception {
+    Constructor<RangeInputSplit> c = RangeInputSplit.class.getDeclaredConstructor(String.class, Range.class, String[].class);
+    c.setAccessible(true);
+    return c.newInstance("table1", range, new String[0]);
+  }
+  
+  @Test
+  public void testGetSplitComparable() throws Exception {
+    AbstractAccumuloStorage s = getAbstractAccumuloStorage();
+    
+    assertEquals(new Text(), s.getSplitComparable(getSplit(new Range(null, "m"))));
+    assertEquals(new Text("m"), s.getSplitComparable(getSplit(new Range("m", null))));
+  }
+  
+  @Test
+  public void testGetSeekRange() throws IOException {
+    AbstractAccumuloStorage s = getAbstractAccumuloStorage();
+    s.setLocation(getDefaultLoadLocation(), new Job());
+    
+    assertEquals(new Range("abc", "z"), s.getSeekRange(new Text("a")));
+    assertEquals(new Range("m", "z"), s.getSeekRange(new Text("m")));
+    assertNull(s.getSeekRange(new Text("zz")));
+  }
+  
+  public static class MutationCollector extends RecordWriter<Text,Mutation> {
+    List<Mutation> mutations = new ArrayList<Mutation>();
+    
+    @Override
+    public void write(Text table, Mutation mut) {
+      mutations.add(mut);
+    }
+    
+    @Override
+    public void close(TaskAttemptContext context) {}
+  }
+  
+  @Test
+  public void testIdempotentStore() throws IOException {
+    AccumuloStorage s = new AccumuloStorage();
+    
+    Job actual = new Job();
+    s.setStoreLocation(getDefaultStoreLocation() + "&idempotent=true", actual);
+    Configuration actualConf = actual.getConfiguration();
+    
+    long timestamp = actualConf.getLong(AbstractAccumuloStorage.WRITE_TIMESTAMP_PREFIX + "table1", -1);
+    Job expected = getDefaultExpectedStoreJob();
+    Configuration expectedConf = expected.getConfiguration();
+    expectedConf.setBoolean("mapred.map.tasks.speculative.execution", false);
+    expectedConf.setBoolean("mapred.reduce.tasks.speculative.execution", false);
+    expectedConf.setLong(AbstractAccumuloStorage.WRITE_TIMESTAMP_PREFIX + "table1", timestamp);
+    TestUtils.assertConfigurationsEqual(expectedConf, actualConf);
+    
+    // a task attempt sees the timestamp chosen when the job was set up
+    AccumuloStorage task = new AccumuloStorage();
+    task.setStoreLocation(getDefaultStoreLocation() + "&idempotent=true", actual);
+    MutationCollector writer = new MutationCollector();
+    task.prepareToWrite(writer);
+    
+    Tuple tuple = TupleFactory.getInstance().newTuple(4);
+    tuple.set(0, "row1");
+    tuple.set(1, "cf1");
+    tuple.set(2, "cq1");
+    tuple.set(3, "val1");
+    task.putNext(tuple);
+    
+    assertEquals(1, writer.mutations.size());
+    ColumnUpdate update = writer.mutations.get(0).getUpdates().get(0);
+    assertEquals(timestamp, update.getTimestamp());
+    assertEquals("val1", new String(update.getValue()));
+  }
+  
+  @Test(expected = IOException.class)
+  public void testIdempotentStoreNotPlanned() throws IOException {
+    // the output format was set up by a store that did not plan a write timestamp
+    Job job = new Job();
+    new AccumuloStorage().setStoreLocation(getDefaultStoreLocation(), job);
+    new AccumuloStorage().setStoreLocation(getDefaultStoreLocation() + "&idempotent=true", job);
+  }
+  
+  /**
+   * Returns the entries of a table like AccumuloInputFormat's reader, but fails once before returning the entry at failAt
+   */
+  static class FailingReader extends RecordReader<Key,Value> {
+    private final Iterator<Entry<Key,Value>> iter;
+    private int failAt;
+    private RuntimeException failure;
+    private int read = 0;
+    private Entry<Key,Value> current;
+    
+    FailingReader(Iterable<Entry<Key,Value>> entries, int failAt) {
+      // how the scanner reports a scan that timed out trying to reach a tablet server
+      this(entries, failAt, new RuntimeException(new IOException("tablet server went away")));
+    }
+    
+    FailingReader(Iterable<Entry<Key,Value>> entries, int failAt, RuntimeException failure) {
+      this.iter = entries.iterator();
+      this.failAt = failAt;
+      this.failure = failure;
+    }
+    
+    @Override
+    public void initialize(InputSplit split, TaskAttemptContext context) {}
+    
+    @Override
+    public boolean nextKeyValue() {
+      if (read == failAt) {
+        failAt = -1;
+        throw failure;
+      }
+      if (!iter.hasNext())
+        return false;
+      current = iter.next();
+      read++;
+      return true;
+    }
+    
+    @Override
+    public Key getCurrentKey() {
+      return current.getKey();
+    }
+    
+    @Override
+    public Value getCurrentValue() {
+      return current.getValue();
+    }
+    
+    @Override
+    public float getProgress() {
+      return 0;
+    }
+    
+    @Override
+    public void close() {}
+  }
+  
+  @Test
+  public void testGetRangesParallelism() throws Exception {
+    final Connector conn = new MockInstance("testGetRangesParallelism").getConnector("root", new byte[0]);
+    conn.tableOperations().create("table1");
+    BatchWriter bw = conn.createBatchWriter("table1", 10000L, 1000L, 1);
+    for (int i = 0; i < 10000; i++) {
+      Mutation m = new Mutation(new Text(String.format("user%05d", i)));
+      m.put(new Text("cf1"), new Text("cq1"), new Value(new byte[0]));
+      bw.addMutation(m);
+    }
+    bw.close();
+    
+    AccumuloStorage s = new AccumuloStorage() {
+      @Override
+      protected Connector getConnector() {
+        return conn;
+      }
+    };
+    s.setLocation("accumulo://table1?instance=testGetRangesParallelism&user=root&password=secret&zookeepers=127.0.0.1:2181&parallelism=10", new Job());
+    List<Range> ranges = new ArrayList<Range>(s.getRanges(new Configuration()));
+    assertEquals(10, ranges.size());
+    
+    // cut between the first and last rows, not over all byte values, which would put every row into one range
+    int[] counts = new int[ranges.size()];
+    for (int i = 0; i < 10000; i++) {
+      Key key = new Key(String.format("user%05d", i));
+      for (int r = 0; r < ranges.size(); r++) {
+        if (ranges.get(r).contains(key))
+          counts[r]++;
+      }
+    }
+    for (int count : counts)
+      assertTrue(count > 500 && count < 1500);
+  }
+  
+  private AccumuloStorage getMockStorage(String name, String params) throws Exception {
+    return getMockStorage(name, params, null);
+  }
+  
+  /**
+   * @param iterator
+   *          an iterator to add in configureInputFormat, or null
+   */
+  private AccumuloStorage getMockStorage(String name, String params, final IteratorSetting iterator) throws Exception {
+    final Connector conn = new MockInstance(name).getConnector("root", new byte[0]);
+    conn.tableOperations().create("table1");
+    BatchWriter bw = conn.createBatchWriter("table1", 10000L, 1000L, 1);
+    for (int i = 0; i < 5; i++) {
+      Mutation m = new Mutation(new Text("row" + i));
+      m.put(new Text("cf1"), new Text("cq1"), new Value(("val" + i).getBytes()));
+      bw.addMutation(m);
+    }
+    bw.close();
+    
+    AccumuloStorage s = new AccumuloStorage() {
+      @Override
+      protected Connector getConnector() {
+        return conn;
+      }
+      
+      @Override
+      protected void configureInputFormat(Configuration conf) {
+        super.configureInputFormat(conf);
+        if (iterator != null)
+          AccumuloInputFormat.addIterator(conf, iterator);
+      }
+    };
+    s.setLocation("accumulo://table1?instance=" + name + "&user=root&password=secret&zookeepers=127.0.0.1:2181" + params, new Job());
+    s.scanRetryBackoffMs = 0;
+    return s;
+  }
+  
+  @Test
+  public void testResumeScan() throws Exception {
+    AccumuloStorage s = getMockStorage("testResumeScan", "");
+    Scanner scanner = s.getConnector().createScanner("table1", new Authorizations());
+    s.prepareToRead(new FailingReader(scanner, 2), new PigSplit(new InputSplit[] {getSplit(new Range())}, 0, new ArrayList<OperatorKey>(), 0));
+    
+    List<String> rows = new ArrayList<String>();
+    Tuple t;
+    while ((t = s.getNext()) != null)
+      rows.add(t.get(0).toString());
+    assertEquals(Arrays.asList("row0", "row1", "row2", "row3", "row4"), rows);
+  }
+  
+  @Test
+  public void testResumeScanKeepsIterators() throws Exception {
+    IteratorSetting is = new IteratorSetting(30, "rows", RegExFilter.class);
+    RegExFilter.setRegexs(is, "row[024]", null, null, null, false);
+    AccumuloStorage s = getMockStorage("testResumeScanKeepsIterators", "", is);
+    Scanner scanner = s.getConnector().createScanner("table1", new Authorizations());
+    scanner.addScanIterator(is);
+    s.prepareToRead(new FailingReader(scanner, 1), new PigSplit(new InputSplit[] {getSplit(new Range())}, 0, new ArrayList<OperatorKey>(), 0));
+    
+    // the resumed scanner filters the rows like the record reader did
+    assertEquals(Arrays.asList("row0", "row2", "row4"), readRows(s));
+  }
+  
+  @Test(expected = RuntimeException.class)
+  public void testResumeScanGivesUp() throws Exception {
+    AccumuloStorage s = getMockStorage("testResumeScanGivesUp", "&scan_retries=0");
+    Scanner scanner = s.getConnector().createScanner("table1", new Authorizations());
+    s.prepareToRead(new FailingReader(scanner, 2), new PigSplit(new InputSplit[] {getSplit(new Range())}, 0, new ArrayList<OperatorKey>(), 0));
+    
+    while (s.getNext() != null) {}
+  }
+  
+  @Test(expected = ValueFormatException.class)
+  public void testResumeScanNotRetried() throws Exception {
+    AccumuloStorage s = getMockStorage("testResumeScanNotRetried", "");
+    Scanner scanner = s.getConnector().createScanner("table1", new Authorizations());
+    s.prepareToRead(new FailingReader(scanner, 2, new ValueFormatException("not a number")), new PigSplit(new InputSplit[] {getSplit(new Range())}, 0,
+        new ArrayList<OperatorKey>(), 0));
+    
+    while (s.getNext() != null) {}
+  }
+  
+  private static List<String> readRows(AbstractAccumuloStorage s) throws IOException {
+    List<String> rows = new ArrayList<String>();
+    Tuple t;
+    while ((t = s.getNext()) != null)
+      rows.add(t.get(0).toString());
+    return rows;
+  }
+  
+  @Test
+  public void testSeekNear() throws Exception {
+    AccumuloStorage s = getMockStorage("testSeekNear", "");
+    s.initialize(new Configuration());
+    
+    s.seekNear(TupleFactory.getInstance().newTuple("row2"));
+    assertEquals(Arrays.asList("row2", "row3", "row4"), readRows(s));
+    
+    s.seekNear(TupleFactory.getInstance().newTuple("row0"));
+    assertEquals(Arrays.asList("row0", "row1", "row2", "row3", "row4"), readRows(s));
+    
+    s.seekNear(TupleFactory.getInstance().newTuple("row9"));
+    assertEquals(0, readRows(s).size());
+    s.close();
+  }
+  
+  @Test
+  public void testSeekNearBounded() throws Exception {
+    AccumuloStorage s = getMockStorage("testSeekNearBounded", "&start=row1&end=row3");
+    s.initialize(new Configuration());
+    
+    s.seekNear(TupleFactory.getInstance().newTuple("row0"));
+    assertEquals(Arrays.asList("row1", "row2", "row3"), readRows(s));
+    
+    s.seekNear(TupleFactory.getInstance().newTuple("row4"));
+    assertEquals(0, readRows(s).size());
+  }  
+  @Test
+  public void testSeekNearInOtherJob() throws Exception {
+    IteratorSetting is = new IteratorSetting(30, "rows", RegExFilter.class);
+    RegExFilter.setRegexs(is, "row[024]", null, null, null, false);
+    AccumuloStorage s = getMockStorage("testSeekNearInOtherJob", "", is);
+    
+    // like the right side of a merge join, set up in a task of a job that reads another table
+    Job job = new Job();
+    AccumuloInputFormat.setInputInfo(job.getConfiguration(), "root", new byte[0], "table2", new Authorizations());
+    job.getConfiguration().set("mapred.task.id", "attempt_201210190000_0001_m_000000_0");
+    s.setLocation("accumulo://table1?instance=testSeekNearInOtherJob&user=root&password=secret&zookeepers=127.0.0.1:2181", job);
+    s.initialize(job.getConfiguration());
+    
+    s.seekNear(TupleFactory.getInstance().newTuple("row1"));
+    assertEquals(Arrays.asList("row2", "row4"), readRows(s));
+  }
+  
+  @Test(expected = IOException.class)
+  public void testCheckpointNotPlannedInTask() throws Exception {
+    File dir = File.createTempFile("checkpoint", "");
+    dir.delete();
+    dir.mkdir();
+    try {
+      AccumuloStorage s = getMockStorage("testCheckpointNotPlannedInTask", "&checkpoint=" + new File(dir, "table1.ts").getAbsolutePath());
+      
+      Configuration conf = new Configuration();
+      conf.set("mapred.task.id", "attempt_201210190000_0001_m_000000_0");
+      s.initialize(conf);
+    } finally {
+      for (File f : dir.listFiles())
+        f.delete();
+      dir.delete();
+    }
+  }
+
 }
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.pig.GroupAggregatingIterator.Function;
+import org.apache.accumulo.pig.GroupAggregatingIterator.Group;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.Tuple;
+import org.junit.Test;
+
+public class AccumuloAggregateStorageTest {
+  
+  @Test
+  public void testConfiguration() throws IOException {
+    AbstractAccumuloStorageTest test = new AbstractAccumuloStorageTest();
+    
+    AccumuloAggregateStorage s = new AccumuloAggregateStorage("sum", "cf");
+    
+    Job actual = new Job();
+    s.setLocation(test.getDefaultLoadLocation(), actual);
+    Configuration actualConf = actual.getConfiguration();
+    
+    Job expected = test.getDefaultExpectedLoadJob();
+    Configuration expectedConf = expected.getConfiguration();
+    IteratorSetting is = new IteratorSetting(AccumuloAggregateStorage.ITERATOR_PRIORITY, GroupAggregatingIterator.class);
+    GroupAggregatingIterator.setFunction(is, Function.SUM);
+    GroupAggregatingIterator.setGroup(is, Group.COLFAM);
+    AccumuloInputFormat.addIterator(expectedConf, is);
+    
+    TestUtils.assertConfigurationsEqual(expectedConf, actualConf);
+  }
+  
+  @Test
+  public void testGetTuple() throws Exception {
+    AccumuloAggregateStorage s = new AccumuloAggregateStorage("count");
+    Tuple tuple = s.getTuple(new Key("row1"), new Value("42".getBytes()));
+    assertEquals(2, tuple.size());
+    assertTrue(Arrays.equals("row1".getBytes(), ((DataByteArray) tuple.get(0)).get()));
+    assertEquals(42L, ((Long) tuple.get(1)).longValue());
+    
+    s = new AccumuloAggregateStorage("max", "cf");
+    tuple = s.getTuple(new Key("row1", "cf1"), new Value("7".getBytes()));
+    assertEquals(3, tuple.size());
+    assertTrue(Arrays.equals("row1".getBytes(), ((DataByteArray) tuple.get(0)).get()));
+    assertTrue(Arrays.equals("cf1".getBytes(), ((DataByteArray) tuple.get(1)).get()));
+    assertEquals(7L, ((Long) tuple.get(2)).longValue());
+  }
+  
+  @Test
+  public void testOnlyLatestVersions() throws Exception {
+    Connector conn = new MockInstance("testOnlyLatestVersions").getConnector("root", new byte[0]);
+    conn.tableOperations().create("table1");
+    BatchWriter bw = conn.createBatchWriter("table1", 10000L, 1000L, 1);
+    Mutation m = new Mutation(new Text("row1"));
+    m.put(new Text("cf1"), new Text("cq1"), 1L, new Value("5".getBytes()));
+    m.put(new Text("cf1"), new Text("cq1"), 2L, new Value("7".getBytes()));
+    m.put(new Text("cf1"), new Text("cq2"), 1L, new Value("1".getBytes()));
+    bw.addMutation(m);
+    bw.close();
+    
+    Scanner scanner = conn.createScanner("table1", new Authorizations());
+    scanner.addScanIterator(new AccumuloAggregateStorage("sum").getIteratorSetting());
+    Entry<Key,Value> e = scanner.iterator().next();
+    assertEquals("8", e.getValue().toString());
+    
+    scanner = conn.createScanner("table1", new Authorizations());
+    scanner.addScanIterator(new AccumuloAggregateStorage("count").getIteratorSetting());
+    e = scanner.iterator().next();
+    assertEquals("2", e.getValue().toString());
+  }
+}
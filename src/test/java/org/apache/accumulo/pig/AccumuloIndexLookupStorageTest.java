@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.backend.hadoop.executionengine.mapReduceLayer.PigSplit;
+import org.apache.pig.data.Tuple;
+import org.apache.pig.impl.plan.OperatorKey;
+import org.junit.Test;
+
+public class AccumuloIndexLookupStorageTest {
+  
+  @Test
+  public void testGetIndexRanges() {
+    List<Range> ranges = AccumuloIndexLookupStorage.getIndexRanges("apple,ban*");
+    assertEquals(2, ranges.size());
+    assertEquals(Range.exact("apple"), ranges.get(0));
+    assertEquals(Range.prefix("ban"), ranges.get(1));
+  }
+  
+  private static SortedSet<Text> rows(String... rows) {
+    SortedSet<Text> set = new TreeSet<Text>();
+    for (String row : rows)
+      set.add(new Text(row));
+    return set;
+  }
+  
+  @Test
+  public void testGetRowRanges() {
+    SortedSet<Text> rows = rows("row7", "row1", "row2", "row5");
+    
+    List<Range> ranges = AccumuloIndexLookupStorage.getRowRanges(rows, new TreeSet<Text>());
+    assertEquals(Arrays.asList(new Range("row1", "row7")), ranges);
+    
+    ranges = AccumuloIndexLookupStorage.getRowRanges(rows, rows("row2", "row3", "row6"));
+    assertEquals(Arrays.asList(new Range("row1", "row2"), new Range("row5", "row5"), new Range("row7", "row7")), ranges);
+  }
+  
+  @Test
+  public void testGetRowRangesNoMatches() {
+    List<Range> ranges = AccumuloIndexLookupStorage.getRowRanges(new TreeSet<Text>(), rows("row3"));
+    assertEquals(1, ranges.size());
+    assertFalse(ranges.get(0).contains(new Key()));
+    assertFalse(ranges.get(0).contains(new Key("row1")));
+    assertTrue(ranges.get(0).afterEndKey(new Key("row1")));
+  }
+  
+  private AccumuloIndexLookupStorage getMockStorage(String name, String terms, String params) throws Exception {
+    final Connector conn = new MockInstance(name).getConnector("root", new byte[0]);
+    conn.tableOperations().create("index1");
+    conn.tableOperations().create("table1");
+    
+    BatchWriter bw = conn.createBatchWriter("index1", 10000L, 1000L, 1);
+    String[][] index = {{"apple", "row1"}, {"apple", "row4"}, {"banana", "row6"}, {"cherry", "row8"}};
+    for (String[] entry : index) {
+      Mutation m = new Mutation(new Text(entry[0]));
+      m.put(new Text("cf1"), new Text(entry[1]), new Value(new byte[0]));
+      bw.addMutation(m);
+    }
+    bw.close();
+    
+    bw = conn.createBatchWriter("table1", 10000L, 1000L, 1);
+    for (int i = 0; i < 10; i++) {
+      Mutation m = new Mutation(new Text("row" + i));
+      m.put(new Text("cf1"), new Text("cq1"), new Value(("val" + i).getBytes()));
+      bw.addMutation(m);
+    }
+    bw.close();
+    
+    AccumuloIndexLookupStorage s = new AccumuloIndexLookupStorage("index1", terms) {
+      @Override
+      protected Connector getConnector() {
+        return conn;
+      }
+    };
+    s.setLocation("accumulo://table1?instance=" + name + "&user=root&password=secret&zookeepers=127.0.0.1:2181" + params, new Job());
+    return s;
+  }
+  
+  @Test
+  public void testGetRanges() throws Exception {
+    AccumuloIndexLookupStorage s = getMockStorage("testGetRanges", "apple,ban*", "");
+    assertEquals(Arrays.asList(new Range("row1", "row6")), s.getRanges(new Configuration()));
+    
+    s = getMockStorage("testGetRangesBounded", "apple,ban*", "&start=row2&end=row5");
+    assertEquals(Arrays.asList(new Range("row4", "row4")), s.getRanges(new Configuration()));
+  }
+  
+  @Test
+  public void testReadMatchingRows() throws Exception {
+    AccumuloIndexLookupStorage s = getMockStorage("testReadMatchingRows", "apple,ban*", "");
+    Range range = s.getRanges(new Configuration()).iterator().next();
+    s.prepareToRead(null, new PigSplit(new InputSplit[] {AbstractAccumuloStorageTest.getSplit(range)}, 0, new ArrayList<OperatorKey>(), 0));
+    
+    List<String> rows = new ArrayList<String>();
+    Tuple t;
+    while ((t = s.getNext()) != null)
+      rows.add(t.get(0).toString());
+    assertEquals(Arrays.asList("row1", "row4", "row6"), rows);
+  }
+  
+  @Test
+  public void testReadNoMatches() throws Exception {
+    AccumuloIndexLookupStorage s = getMockStorage("testReadNoMatches", "durian", "");
+    Range range = s.getRanges(new Configuration()).iterator().next();
+    
+    // the task must not look the terms up again, which would fail without the index
+    s.getConnector().tableOperations().delete("index1");
+    s.prepareToRead(null, new PigSplit(new InputSplit[] {AbstractAccumuloStorageTest.getSplit(range)}, 0, new ArrayList<OperatorKey>(), 0));
+    assertNull(s.getNext());
+  }
+}
@@ -17,17 +17,31 @@
 package org.apache.accumulo.pig;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map.Entry;
 
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.mock.MockInstance;
 import org.apache.accumulo.core.data.ColumnUpdate;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.LongCombiner;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.pig.LoadPushDown.RequiredField;
+import org.apache.pig.LoadPushDown.RequiredFieldList;
+import org.apache.pig.data.DataByteArray;
+import org.apache.pig.data.DataType;
 import org.apache.pig.data.Tuple;
 import org.apache.pig.data.TupleFactory;
 import org.junit.Test;
@@ -101,4 +115,157 @@ public class AccumuloStorageTest {
     tuple = s.getTuple(key, value);
     TestUtils.assertKeyValueEqualsTuple(key, value, tuple);
   }
+  
+  @Test
+  public void testCodec() throws Exception {
+    AccumuloStorage s = new AccumuloStorage();
+    s.setLocation(new AbstractAccumuloStorageTest().getDefaultLoadLocation() + "&codec=varlong", new Job());
+    
+    Value value = new Value(LongCombiner.VAR_LEN_ENCODER.encode(1024L));
+    Tuple tuple = s.getTuple(new Key("row1", "cf1", "cq1"), value);
+    assertEquals(1024L, tuple.get(5));
+    
+    Tuple out = TupleFactory.getInstance().newTuple(4);
+    out.set(0, "row1");
+    out.set(1, "cf1");
+    out.set(2, "cq1");
+    out.set(3, 1024L);
+    Mutation mut = s.getMutations(out).iterator().next();
+    assertTrue(Arrays.equals(value.get(), mut.getUpdates().get(0).getValue()));
+  }
+  
+  @Test
+  public void testGetMutationsOperations() throws Exception {
+    AccumuloStorage s = new AccumuloStorage();
+    s.operations = true;
+    
+    Tuple put = TupleFactory.getInstance().newTuple(5);
+    put.set(0, "P");
+    put.set(1, "row1");
+    put.set(2, "cf1");
+    put.set(3, "cq1");
+    put.set(4, "val1");
+    ColumnUpdate update = s.getMutations(put).iterator().next().getUpdates().get(0);
+    assertFalse(update.isDeleted());
+    assertTrue(Arrays.equals("cq1".getBytes(), update.getColumnQualifier()));
+    assertTrue(Arrays.equals("val1".getBytes(), update.getValue()));
+    
+    Tuple delete = TupleFactory.getInstance().newTuple(5);
+    delete.set(0, "D");
+    delete.set(1, "row1");
+    delete.set(2, "cf1");
+    delete.set(3, "cq1");
+    delete.set(4, "cv1");
+    Mutation mut = s.getMutations(delete).iterator().next();
+    assertTrue(Arrays.equals("row1".getBytes(), mut.getRow()));
+    update = mut.getUpdates().get(0);
+    assertTrue(update.isDeleted());
+    assertTrue(Arrays.equals("cf1".getBytes(), update.getColumnFamily()));
+    assertTrue(Arrays.equals("cq1".getBytes(), update.getColumnQualifier()));
+    assertTrue(Arrays.equals("cv1".getBytes(), update.getColumnVisibility()));
+    
+    delete = TupleFactory.getInstance().newTuple(4);
+    delete.set(0, "D");
+    delete.set(1, "row1");
+    delete.set(2, "cf1");
+    delete.set(3, "cq1");
+    update = s.getMutations(delete).iterator().next().getUpdates().get(0);
+    assertTrue(update.isDeleted());
+    assertTrue(Arrays.equals("".getBytes(), update.getColumnVisibility()));
+  }
+  
+  @Test(expected = IOException.class)
+  public void testGetMutationsUnknownOperation() throws Exception {
+    AccumuloStorage s = new AccumuloStorage();
+    s.operations = true;
+    
+    Tuple tuple = TupleFactory.getInstance().newTuple(4);
+    tuple.set(0, "X");
+    tuple.set(1, "row1");
+    tuple.set(2, "cf1");
+    tuple.set(3, "cq1");
+    s.getMutations(tuple);
+  }
+  
+  @Test
+  public void testCompression() throws Exception {
+    AccumuloStorage s = new AccumuloStorage();
+    s.setLocation(new AbstractAccumuloStorageTest().getDefaultLoadLocation() + "&compression=deflate&compression_threshold_bytes=8", new Job());
+    
+    Tuple out = TupleFactory.getInstance().newTuple(4);
+    out.set(0, "row1");
+    out.set(1, "cf1");
+    out.set(2, "cq1");
+    out.set(3, "val1");
+    byte[] small = s.getMutations(out).iterator().next().getUpdates().get(0).getValue();
+    assertTrue(Arrays.equals("val1".getBytes(), small));
+    
+    String large = "value1value1value1value1value1value1value1value1";
+    out.set(3, large);
+    Value value = new Value(s.getMutations(out).iterator().next().getUpdates().get(0).getValue());
+    assertTrue(ValueCompression.isCompressed(value.get()));
+    
+    Tuple tuple = s.getTuple(new Key("row1", "cf1", "cq1"), value);
+    assertEquals(new DataByteArray(large), tuple.get(5));
+    assertEquals(0, DataType.compare(new DataByteArray(large), tuple.get(5)));
+    
+    s.codec = new ValueCodecs.StringCodec();
+    assertEquals(large, s.getTuple(new Key("row1", "cf1", "cq1"), value).get(5));
+  }
+  
+  @Test
+  public void testPushProjection() throws Exception {
+    AccumuloStorage front = new AccumuloStorage();
+    front.setUDFContextSignature("testPushProjection");
+    RequiredFieldList fields = new RequiredFieldList();
+    fields.add(new RequiredField(null, 0, null, DataType.BYTEARRAY));
+    fields.add(new RequiredField(null, 4, null, DataType.LONG));
+    assertFalse(front.pushProjection(fields).getRequiredFieldResponse());
+    
+    AccumuloStorage s = new AccumuloStorage();
+    s.setUDFContextSignature("testPushProjection");
+    s.setLocation(new AbstractAccumuloStorageTest().getDefaultLoadLocation() + "&compression=deflate", new Job());
+    
+    // a corrupt compressed value shows it is never decompressed
+    byte[] compressed = ValueCompression.compress("value1value1value1value1value1value1value1value1".getBytes());
+    Value value = new Value(Arrays.copyOf(compressed, compressed.length / 2));
+    Key key = new Key("row1", "cf1", "cq1", "cv1", 1024L);
+    Tuple tuple = s.getTuple(key, value);
+    assertEquals(new DataByteArray("row1"), tuple.get(0));
+    assertEquals(1024L, tuple.get(4));
+    assertNull(tuple.get(AccumuloStorage.VALUE_FIELD));
+    
+    fields.add(new RequiredField(null, AccumuloStorage.VALUE_FIELD, null, DataType.BYTEARRAY));
+    front.pushProjection(fields);
+    s.setUDFContextSignature("testPushProjection");
+    value = new Value(compressed);
+    TestUtils.assertKeyValueEqualsTuple(key, new Value("value1value1value1value1value1value1value1value1".getBytes()), s.getTuple(key, value));
+  }
+  
+  @Test
+  public void testDropValues() throws Exception {
+    Connector conn = new MockInstance("testDropValues").getConnector("root", new byte[0]);
+    conn.tableOperations().create("table1");
+    BatchWriter bw = conn.createBatchWriter("table1", 10000L, 1000L, 1);
+    Mutation m = new Mutation(new Text("row1"));
+    m.put(new Text("cf1"), new Text("cq1"), new Value("val1".getBytes()));
+    bw.addMutation(m);
+    bw.close();
+    
+    RequiredFieldList fields = new RequiredFieldList();
+    fields.add(new RequiredField(null, 0, null, DataType.BYTEARRAY));
+    AccumuloStorage s = new AccumuloStorage();
+    s.setUDFContextSignature("testDropValues");
+    s.pushProjection(fields);
+    Job job = new Job();
+    s.setLocation("accumulo://table1?instance=testDropValues&user=root&password=secret&zookeepers=127.0.0.1:2181", job);
+    
+    int count = 0;
+    for (Entry<Key,Value> entry : InputFormatScanner.createScanner(conn, job.getConfiguration())) {
+      assertEquals("row1", entry.getKey().getRow().toString());
+      assertEquals(0, entry.getValue().getSize());
+      count++;
+    }
+    assertEquals(1, count);
+  }
 }
@@ -24,9 +24,11 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.client.mapreduce.AccumuloInputFormat;
@@ -149,4 +151,116 @@ public class AccumuloWholeRowStorageTest {
     return tuple;
   }
   
+  private Value getEncodedRow() throws IOException {
+    List<Key> keys = new ArrayList<Key>(3);
+    keys.add(new Key("row", "cf1", "cq1", "cv1", 2L));
+    // an older version under a visibility that sorts first
+    keys.add(new Key("row", "cf1", "cq1", "cv0", 1L));
+    keys.add(new Key("row", "cf1", "cq2", "cv1", 1L));
+    keys.add(new Key("row", "cf2", "cq1", "cv2", 1L));
+    
+    List<Value> values = new ArrayList<Value>(3);
+    values.add(new Value("new".getBytes()));
+    values.add(new Value("old".getBytes()));
+    values.add(new Value("2".getBytes()));
+    values.add(new Value("3".getBytes()));
+    
+    return WholeRowIterator.encodeRow(keys, values);
+  }
+  
+  @Test
+  public void testGetTupleMap() throws Exception {
+    AccumuloWholeRowStorage s = new AccumuloWholeRowStorage("map");
+    Tuple tuple = s.getTuple(new Key("row"), getEncodedRow());
+    
+    assertTrue(Arrays.equals("row".getBytes(), ((DataByteArray) tuple.get(0)).get()));
+    Map<String,Object> map = (Map<String,Object>) tuple.get(1);
+    assertEquals(3, map.size());
+    assertEquals(new DataByteArray("new"), map.get("cf1:cq1"));
+    assertEquals(new DataByteArray("2"), map.get("cf1:cq2"));
+    assertEquals(new DataByteArray("3"), map.get("cf2:cq1"));
+  }
+  
+  @Test
+  public void testGetTupleFamilyMap() throws Exception {
+    AccumuloWholeRowStorage s = new AccumuloWholeRowStorage("family_map");
+    Tuple tuple = s.getTuple(new Key("row"), getEncodedRow());
+    
+    Map<String,Object> map = (Map<String,Object>) tuple.get(1);
+    assertEquals(2, map.size());
+    Map<String,Object> cf1 = (Map<String,Object>) map.get("cf1");
+    assertEquals(2, cf1.size());
+    assertEquals(new DataByteArray("new"), cf1.get("cq1"));
+    assertEquals(new DataByteArray("2"), cf1.get("cq2"));
+    assertEquals(new DataByteArray("3"), ((Map<String,Object>) map.get("cf2")).get("cq1"));
+  }
+  
+  @Test
+  public void testGetMutationsMap() throws Exception {
+    Map<String,Object> cf2 = new HashMap<String,Object>();
+    cf2.put("cq2", "val2");
+    Map<String,Object> map = new HashMap<String,Object>();
+    map.put("cf1:cq1", "val1");
+    map.put("cf2", cf2);
+    
+    Tuple tuple = TupleFactory.getInstance().newTuple(2);
+    tuple.set(0, "row1");
+    tuple.set(1, map);
+    
+    AccumuloWholeRowStorage s = new AccumuloWholeRowStorage();
+    Mutation mut = s.getMutations(tuple).iterator().next();
+    
+    List<ColumnUpdate> updates = mut.getUpdates();
+    assertEquals(2, updates.size());
+    for (ColumnUpdate update : updates) {
+      String cf = new String(update.getColumnFamily());
+      String cq = new String(update.getColumnQualifier());
+      if (cf.equals("cf1")) {
+        assertEquals("cq1", cq);
+        assertEquals("val1", new String(update.getValue()));
+      } else {
+        assertEquals("cf2", cf);
+        assertEquals("cq2", cq);
+        assertEquals("val2", new String(update.getValue()));
+      }
+    }
+  }
+  
+  @Test
+  public void testConfigurationChunked() throws IOException {
+    AbstractAccumuloStorageTest test = new AbstractAccumuloStorageTest();
+    
+    AccumuloWholeRowStorage s = new AccumuloWholeRowStorage("bag", "1000");
+    
+    Job actual = new Job();
+    s.setLocation(test.getDefaultLoadLocation(), actual);
+    Configuration actualConf = actual.getConfiguration();
+    
+    Job expected = test.getDefaultExpectedLoadJob();
+    Configuration expectedConf = expected.getConfiguration();
+    IteratorSetting is = new IteratorSetting(10, ChunkedWholeRowIterator.class);
+    ChunkedWholeRowIterator.setMaxCells(is, 1000);
+    AccumuloInputFormat.addIterator(expectedConf, is);
+    
+    TestUtils.assertConfigurationsEqual(expectedConf, actualConf);
+  }
+  
+  @Test
+  public void testGetTupleChunked() throws Exception {
+    AccumuloWholeRowStorage s = new AccumuloWholeRowStorage("map", "2");
+    
+    Tuple tuple = s.getTuple(new Key("row", "cf1", "cq1"), getEncodedRow());
+    assertEquals(3, tuple.size());
+    assertEquals(0, tuple.get(1));
+    assertEquals(3, ((Map<String,Object>) tuple.get(2)).size());
+    
+    tuple = s.getTuple(new Key("row", "cf2", "cq1"), getEncodedRow());
+    assertEquals(1, tuple.get(1));
+    
+    tuple = s.getTuple(new Key("row2", "cf1", "cq1"), getEncodedRow());
+    assertEquals(0, tuple.get(1));
+    
+    Collection<Mutation> muts = s.getMutations(tuple);
+    assertEquals(3, muts.iterator().next().getUpdates().size());
+  }
 }
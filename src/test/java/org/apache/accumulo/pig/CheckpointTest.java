@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+
+import org.apache.hadoop.conf.Configuration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CheckpointTest {
+  
+  private File dir;
+  private String checkpoint;
+  private Configuration conf = new Configuration();
+  
+  @Before
+  public void createDir() throws Exception {
+    dir = File.createTempFile("checkpoint", "");
+    dir.delete();
+    dir.mkdir();
+    checkpoint = new File(dir, "table1.ts").getAbsolutePath();
+  }
+  
+  @After
+  public void deleteDir() {
+    for (File f : dir.listFiles())
+      f.delete();
+    dir.delete();
+  }
+  
+  @Test
+  public void testWrite() throws Exception {
+    assertNull(Checkpoint.read(conf, checkpoint));
+    Checkpoint.write(conf, checkpoint, 1000L);
+    assertEquals(new Long(1000L), Checkpoint.read(conf, checkpoint));
+    Checkpoint.write(conf, checkpoint, 2000L);
+    assertEquals(new Long(2000L), Checkpoint.read(conf, checkpoint));
+    assertFalse(new File(checkpoint + ".tmp").exists());
+  }
+  
+  @Test
+  public void testReadInterruptedCommit() throws Exception {
+    // the old checkpoint was removed but the new one not yet renamed into place
+    FileWriter writer = new FileWriter(checkpoint + ".tmp");
+    writer.write("3000\n");
+    writer.close();
+    assertEquals(new Long(3000L), Checkpoint.read(conf, checkpoint));
+  }
+  
+  @Test
+  public void testPlanAndCommit() throws Exception {
+    Checkpoint.commit(conf, checkpoint);
+    assertNull(Checkpoint.read(conf, checkpoint));
+    
+    long next = Checkpoint.plan(conf, checkpoint);
+    assertTrue(new File(checkpoint + ".pending").exists());
+    assertEquals(next, Checkpoint.plan(conf, checkpoint));
+    assertNull(Checkpoint.read(conf, checkpoint));
+    
+    Checkpoint.commit(conf, checkpoint);
+    assertEquals(new Long(next), Checkpoint.read(conf, checkpoint));
+    assertFalse(new File(checkpoint + ".pending").exists());
+  }
+}
@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.apache.accumulo.core.iterators.user.WholeRowIterator;
+import org.junit.Test;
+
+public class ChunkedWholeRowIteratorTest {
+  
+  private TreeMap<Key,Value> getData() {
+    TreeMap<Key,Value> data = new TreeMap<Key,Value>();
+    for (int i = 0; i < 5; i++) {
+      data.put(new Key("row1", "cf", "cq" + i), new Value(("" + i).getBytes()));
+    }
+    data.put(new Key("row2", "cf", "cq0"), new Value("0".getBytes()));
+    return data;
+  }
+  
+  private void assertChunk(ChunkedWholeRowIterator iter, String row, int firstCq, int cells) throws IOException {
+    assertTrue(iter.hasTop());
+    assertEquals(row, iter.getTopKey().getRow().toString());
+    SortedMap<Key,Value> decoded = WholeRowIterator.decodeRow(iter.getTopKey(), iter.getTopValue());
+    assertEquals(cells, decoded.size());
+    assertEquals("cq" + firstCq, decoded.firstKey().getColumnQualifier().toString());
+    assertEquals(decoded.lastKey(), iter.getTopKey());
+    iter.next();
+  }
+  
+  @Test
+  public void testChunks() throws IOException {
+    ChunkedWholeRowIterator iter = new ChunkedWholeRowIterator(new SortedMapIterator(getData()), 2);
+    iter.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+    
+    assertChunk(iter, "row1", 0, 2);
+    assertChunk(iter, "row1", 2, 2);
+    assertChunk(iter, "row1", 4, 1);
+    assertChunk(iter, "row2", 0, 1);
+    assertFalse(iter.hasTop());
+  }
+  
+  @Test
+  public void testResume() throws IOException {
+    // a scan resumed after the first chunk continues with the next cell of the row
+    ChunkedWholeRowIterator iter = new ChunkedWholeRowIterator(new SortedMapIterator(getData()), 2);
+    iter.seek(new Range(new Key("row1", "cf", "cq1"), false, null, true), Collections.<ByteSequence> emptySet(), false);
+    
+    assertChunk(iter, "row1", 2, 2);
+    assertChunk(iter, "row1", 4, 1);
+    assertChunk(iter, "row2", 0, 1);
+    assertFalse(iter.hasTop());
+  }
+}
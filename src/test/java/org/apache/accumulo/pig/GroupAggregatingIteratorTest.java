@@ -0,0 +1,97 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.apache.accumulo.pig.GroupAggregatingIterator.Function;
+import org.apache.accumulo.pig.GroupAggregatingIterator.Group;
+import org.junit.Test;
+
+public class GroupAggregatingIteratorTest {
+  
+  private TreeMap<Key,Value> getData() {
+    TreeMap<Key,Value> data = new TreeMap<Key,Value>();
+    data.put(new Key("row1", "cf1", "cq1"), new Value("1".getBytes()));
+    data.put(new Key("row1", "cf1", "cq2"), new Value("5".getBytes()));
+    data.put(new Key("row1", "cf2", "cq1"), new Value("3".getBytes()));
+    data.put(new Key("row2", "cf1", "cq1"), new Value("-2".getBytes()));
+    return data;
+  }
+  
+  private GroupAggregatingIterator seek(Function function, Group group, Range range) throws IOException {
+    GroupAggregatingIterator iter = new GroupAggregatingIterator(new SortedMapIterator(getData()), function, group);
+    iter.seek(range, Collections.<ByteSequence> emptySet(), false);
+    return iter;
+  }
+  
+  private void assertTop(GroupAggregatingIterator iter, Key key, long aggregate) throws IOException {
+    assertTrue(iter.hasTop());
+    assertEquals(key, iter.getTopKey());
+    assertEquals(Long.toString(aggregate), iter.getTopValue().toString());
+    iter.next();
+  }
+  
+  @Test
+  public void testRow() throws IOException {
+    GroupAggregatingIterator iter = seek(Function.SUM, Group.ROW, new Range());
+    assertTop(iter, new Key("row1"), 9);
+    assertTop(iter, new Key("row2"), -2);
+    assertFalse(iter.hasTop());
+    
+    iter = seek(Function.COUNT, Group.ROW, new Range());
+    assertTop(iter, new Key("row1"), 3);
+    assertTop(iter, new Key("row2"), 1);
+    assertFalse(iter.hasTop());
+  }
+  
+  @Test
+  public void testColumnFamily() throws IOException {
+    GroupAggregatingIterator iter = seek(Function.MAX, Group.COLFAM, new Range());
+    assertTop(iter, new Key("row1", "cf1"), 5);
+    assertTop(iter, new Key("row1", "cf2"), 3);
+    assertTop(iter, new Key("row2", "cf1"), -2);
+    assertFalse(iter.hasTop());
+    
+    iter = seek(Function.MIN, Group.COLFAM, new Range());
+    assertTop(iter, new Key("row1", "cf1"), 1);
+  }
+  
+  @Test
+  public void testResume() throws IOException {
+    // a scan resumed after a returned group must not emit a partial aggregate for the rest of it
+    GroupAggregatingIterator iter = seek(Function.COUNT, Group.ROW, new Range(new Key("row1"), false, null, true));
+    assertTop(iter, new Key("row2"), 1);
+    assertFalse(iter.hasTop());
+    
+    iter = seek(Function.COUNT, Group.COLFAM, new Range(new Key("row1", "cf1"), false, null, true));
+    assertTop(iter, new Key("row1", "cf2"), 1);
+    assertTop(iter, new Key("row2", "cf1"), 1);
+    assertFalse(iter.hasTop());
+  }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class RangeSplitterTest {
+  
+  private static SortedSet<Text> rows(String... rows) {
+    SortedSet<Text> set = new TreeSet<Text>();
+    for (String row : rows)
+      set.add(new Text(row));
+    return set;
+  }
+  
+  @Test
+  public void testSplit() {
+    List<Range> ranges = RangeSplitter.split(new Range("b", "y"), rows("a", "c", "m", "z"));
+    assertEquals(Arrays.asList(new Range(new Text("b"), true, new Text("c"), true), new Range(new Text("c"), false, new Text("m"), true), new Range(
+        new Text("m"), false, new Text("y"), true)), ranges);
+    
+    // like a tablet, each piece ends with its split row
+    ranges = RangeSplitter.split(new Range(), rows("m"));
+    assertEquals(2, ranges.size());
+    assertTrue(ranges.get(0).contains(new Key("a")));
+    assertTrue(ranges.get(0).contains(new Key("m", "cf", "cq")));
+    assertTrue(ranges.get(0).afterEndKey(new Key("m\0")));
+    assertTrue(ranges.get(1).contains(new Key("m\0")));
+    assertTrue(ranges.get(1).contains(new Key("zzz")));
+  }
+  
+  @Test
+  public void testInterpolate() {
+    SortedSet<Text> rows = RangeSplitter.interpolate(new Text("a"), new Text("c"), 4);
+    assertEquals(3, rows.size());
+    assertEquals(new Text(new byte[] {'a', (byte) 0x80}), rows.first());
+    assertTrue(rows.contains(new Text("b")));
+    
+    rows = RangeSplitter.interpolate(null, null, 100);
+    assertEquals(99, rows.size());
+    
+    // nothing fits between a row and the row that directly follows it
+    assertEquals(0, RangeSplitter.interpolate(new Text("a"), new Text("a\0"), 10).size());
+  }
+  
+  @Test
+  public void testSubdivide() {
+    SortedSet<Text> splits = RangeSplitter.subdivide(rows("m"), null, null, 10);
+    assertTrue(splits.contains(new Text("m")));
+    assertEquals(19, splits.size());
+    assertEquals(9, splits.headSet(new Text("m")).size());
+    
+    // only the rows being read are subdivided
+    splits = RangeSplitter.subdivide(rows("m"), new Text("n"), new Text("p"), 4);
+    assertEquals(4, splits.size());
+    for (Text split : splits.tailSet(new Text("m\0")))
+      assertTrue(split.compareTo(new Text("n")) > 0 && split.compareTo(new Text("p")) < 0);
+  }
+  
+  @Test
+  public void testFirstAndLastRow() throws Exception {
+    Connector conn = new MockInstance("testFirstAndLastRow").getConnector("root", new byte[0]);
+    conn.tableOperations().create("table1");
+    Scanner scanner = conn.createScanner("table1", new Authorizations());
+    assertNull(RangeSplitter.firstRow(scanner));
+    assertNull(RangeSplitter.lastRow(scanner));
+    
+    BatchWriter bw = conn.createBatchWriter("table1", 10000L, 1000L, 1);
+    for (Text row : rows("b", "ba", "m", "m\0", "m~")) {
+      Mutation m = new Mutation(row);
+      m.put(new Text("cf1"), new Text("cq1"), new Value(new byte[0]));
+      bw.addMutation(m);
+    }
+    for (byte[] row : new byte[][] {{'m', (byte) 0xff}, {'m', (byte) 0xff, 'x'}}) {
+      Mutation m = new Mutation(new Text(row));
+      m.put(new Text("cf1"), new Text("cq1"), new Value(new byte[0]));
+      bw.addMutation(m);
+    }
+    bw.close();
+    assertEquals(new Text("b"), RangeSplitter.firstRow(scanner));
+    assertEquals(new Text(new byte[] {'m', (byte) 0xff, 'x'}), RangeSplitter.lastRow(scanner));
+  }
+  
+  @Test
+  public void testReadSplits() throws Exception {
+    File file = File.createTempFile("splits", ".txt");
+    try {
+      FileWriter writer = new FileWriter(file);
+      writer.write("m\n\nc\nx\n");
+      writer.close();
+      assertEquals(rows("c", "m", "x"), RangeSplitter.readSplits(new Configuration(), file.getAbsolutePath()));
+    } finally {
+      file.delete();
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.pig.AbstractAccumuloStorageTest.MutationCollector;
+import org.apache.accumulo.pig.RowMergingAccumuloOutputFormat.RowMergingRecordWriter;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+public class RowMergingAccumuloOutputFormatTest {
+  
+  private static Mutation delete(String row, String cq) {
+    Mutation mut = new Mutation(new Text(row));
+    mut.putDelete(new Text("cf1"), new Text(cq));
+    return mut;
+  }
+  
+  @Test
+  public void testMergesSameRow() throws Exception {
+    MutationCollector collector = new MutationCollector();
+    RowMergingRecordWriter writer = new RowMergingRecordWriter(collector, 1000 * 1000);
+    
+    Text table = new Text("table1");
+    Mutation single = delete("row0", "cq1");
+    writer.write(table, single);
+    writer.write(table, delete("row1", "cq1"));
+    writer.write(table, delete("row1", "cq2"));
+    writer.write(table, delete("row1", "cq3"));
+    writer.write(new Text("table2"), delete("row1", "cq4"));
+    assertEquals(2, collector.mutations.size());
+    writer.close(null);
+    
+    assertEquals(3, collector.mutations.size());
+    // a row written once is passed through untouched
+    assertSame(single, collector.mutations.get(0));
+    
+    Mutation merged = collector.mutations.get(1);
+    assertTrue(Arrays.equals("row1".getBytes(), merged.getRow()));
+    assertEquals(3, merged.getUpdates().size());
+    for (int i = 0; i < 3; i++) {
+      assertTrue(merged.getUpdates().get(i).isDeleted());
+      assertTrue(Arrays.equals(("cq" + (i + 1)).getBytes(), merged.getUpdates().get(i).getColumnQualifier()));
+    }
+    assertEquals(1, collector.mutations.get(2).getUpdates().size());
+  }
+  
+  @Test
+  public void testFlushesLargeRows() throws Exception {
+    MutationCollector collector = new MutationCollector();
+    RowMergingRecordWriter writer = new RowMergingRecordWriter(collector, delete("row1", "cq1").numBytes() * 2);
+    
+    Text table = new Text("table1");
+    for (int i = 0; i < 10; i++)
+      writer.write(table, delete("row1", "cq" + i));
+    writer.close(null);
+    
+    int updates = 0;
+    for (Mutation mut : collector.mutations) {
+      assertTrue(Arrays.equals("row1".getBytes(), mut.getRow()));
+      updates += mut.getUpdates().size();
+    }
+    assertEquals(10, updates);
+    assertTrue(collector.mutations.size() > 1);
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.accumulo.core.iterators.LongCombiner;
+import org.apache.pig.data.DataByteArray;
+import org.junit.Test;
+
+public class ValueCodecsTest {
+  
+  public static class ReversingCodec implements ValueCodec {
+    String prefix = "";
+    
+    public ReversingCodec() {}
+    
+    public ReversingCodec(String prefix) {
+      this.prefix = prefix;
+    }
+    
+    @Override
+    public Object decode(byte[] bytes) throws IOException {
+      return new StringBuilder(new String(bytes)).reverse().toString();
+    }
+    
+    @Override
+    public byte[] encode(Object o) throws IOException {
+      return new StringBuilder((String) o).reverse().toString().getBytes();
+    }
+  }
+  
+  @Test
+  public void testForName() throws IOException {
+    assertNull(ValueCodecs.forName("raw"));
+    assertTrue(ValueCodecs.forName("string") instanceof ValueCodecs.StringCodec);
+    assertTrue(ValueCodecs.forName("varlong") instanceof ValueCodecs.LongCodec);
+    assertTrue(ValueCodecs.forName(ReversingCodec.class.getName()) instanceof ReversingCodec);
+    assertEquals("p1", ((ReversingCodec) ValueCodecs.forName(ReversingCodec.class.getName() + "('p1')")).prefix);
+  }
+  
+  @Test(expected = IOException.class)
+  public void testForNameUnknown() throws IOException {
+    ValueCodecs.forName("org.example.NoSuchCodec");
+  }
+  
+  @Test(expected = IOException.class)
+  public void testForNameNotACodec() throws IOException {
+    ValueCodecs.forName("java.lang.Object");
+  }
+  
+  @Test
+  public void testString() throws IOException {
+    ValueCodec codec = ValueCodecs.forName("string");
+    assertEquals("val1", codec.decode("val1".getBytes("UTF-8")));
+    assertTrue(Arrays.equals("val1".getBytes("UTF-8"), codec.encode("val1")));
+    assertTrue(Arrays.equals("val1".getBytes("UTF-8"), codec.encode(new DataByteArray("val1"))));
+  }
+  
+  @Test
+  public void testLong() throws IOException {
+    ValueCodec codec = ValueCodecs.forName("fixedlong");
+    byte[] bytes = LongCombiner.FIXED_LEN_ENCODER.encode(42L);
+    assertEquals(42L, codec.decode(bytes));
+    assertTrue(Arrays.equals(bytes, codec.encode(42)));
+    assertTrue(Arrays.equals(bytes, codec.encode("42")));
+    
+    codec = ValueCodecs.forName("long");
+    assertEquals(-7L, codec.decode("-7".getBytes()));
+    assertTrue(Arrays.equals("-7".getBytes(), codec.encode(-7L)));
+  }
+}
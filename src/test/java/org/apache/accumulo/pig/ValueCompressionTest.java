@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.accumulo.core.iterators.ValueFormatException;
+import org.junit.Test;
+
+public class ValueCompressionTest {
+  
+  private static byte[] text(int length) {
+    StringBuilder sb = new StringBuilder();
+    while (sb.length() < length)
+      sb.append("the quick brown fox jumps over the lazy dog ");
+    return sb.substring(0, length).getBytes();
+  }
+  
+  @Test
+  public void testRoundTrip() {
+    byte[] value = text(10000);
+    byte[] compressed = ValueCompression.compress(value);
+    assertTrue(ValueCompression.isCompressed(compressed));
+    assertTrue(compressed.length < value.length);
+    assertTrue(Arrays.equals(value, ValueCompression.decompress(compressed)));
+  }
+  
+  @Test
+  public void testIncompressible() {
+    byte[] value = new byte[1000];
+    new Random(42).nextBytes(value);
+    assertSame(value, ValueCompression.compress(value));
+    assertFalse(ValueCompression.isCompressed(value));
+    assertFalse(ValueCompression.isCompressed("val".getBytes()));
+  }
+  
+  @Test(expected = ValueFormatException.class)
+  public void testTruncated() {
+    byte[] compressed = ValueCompression.compress(text(10000));
+    ValueCompression.decompress(Arrays.copyOf(compressed, compressed.length / 2));
+  }
+  
+  @Test(expected = ValueFormatException.class)
+  public void testNegativeLength() {
+    byte[] compressed = ValueCompression.compress(text(10000));
+    compressed[4] = (byte) 0x80;
+    ValueCompression.decompress(compressed);
+  }
+  
+  @Test(expected = ValueFormatException.class)
+  public void testHugeLength() {
+    byte[] compressed = ValueCompression.compress(text(10000));
+    compressed[4] = 0x7f;
+    ValueCompression.decompress(compressed);
+  }
+}
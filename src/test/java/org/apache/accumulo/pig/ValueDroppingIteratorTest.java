@@ -0,0 +1,58 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.apache.accumulo.pig;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.junit.Test;
+
+public class ValueDroppingIteratorTest {
+  
+  private void assertKeysWithEmptyValues(TreeMap<Key,Value> data, SortedKeyValueIterator<Key,Value> iter) throws IOException {
+    iter.seek(new Range(), Collections.<ByteSequence> emptySet(), false);
+    for (Key key : data.keySet()) {
+      assertTrue(iter.hasTop());
+      assertEquals(key, iter.getTopKey());
+      assertEquals(0, iter.getTopValue().getSize());
+      iter.next();
+    }
+    assertFalse(iter.hasTop());
+  }
+  
+  @Test
+  public void testDropValues() throws IOException {
+    TreeMap<Key,Value> data = new TreeMap<Key,Value>();
+    for (int i = 0; i < 5; i++)
+      data.put(new Key("row" + i, "cf", "cq"), new Value(("val" + i).getBytes()));
+    
+    ValueDroppingIterator iter = new ValueDroppingIterator(new SortedMapIterator(data));
+    assertKeysWithEmptyValues(data, iter);
+    assertKeysWithEmptyValues(data, iter.deepCopy(null));
+  }
+}